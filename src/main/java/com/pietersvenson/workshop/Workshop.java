@@ -27,9 +27,11 @@ package com.pietersvenson.workshop;
 
 import com.pietersvenson.workshop.command.WorkshopCommandRoot;
 import com.pietersvenson.workshop.command.common.CommandTree;
+import com.pietersvenson.workshop.config.Settings;
 import com.pietersvenson.workshop.state.WorkshopState;
 import com.pietersvenson.workshop.util.Glowing;
 import com.pietersvenson.workshop.util.Reference;
+import com.pietersvenson.workshop.util.Timings;
 import lombok.Getter;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -42,6 +44,8 @@ import org.bukkit.plugin.java.annotation.plugin.Plugin;
 import org.bukkit.plugin.java.annotation.plugin.Website;
 import org.bukkit.plugin.java.annotation.plugin.author.Author;
 
+import java.util.concurrent.TimeUnit;
+
 @Plugin(name = "Workshop", version = Reference.VERSION)
 @Description(Reference.DESCRIPTION)
 @Author("Pieter Svenson")
@@ -78,11 +82,11 @@ public final class Workshop extends JavaPlugin {
     workshopCommandTree = new CommandTree(new WorkshopCommandRoot());
     workshopCommandTree.register(this);
 
-    // Schedule a data-save every 10 minutes
-    Bukkit.getScheduler().scheduleSyncRepeatingTask(this, () -> {
-      state.save();
+    // Schedule a save of any unsaved changes every 10 minutes
+    Bukkit.getScheduler().scheduleSyncRepeatingTask(this, Timings.task("autosave", () -> {
+      state.saveDirty();
       getLogger().info("Automatically saved Workshop data.");
-    }, 12000, 12000);
+    }), 12000, 12000);
 
     // Extra preparation
     Glowing.register(this);
@@ -93,13 +97,13 @@ public final class Workshop extends JavaPlugin {
   public void onDisable() {
     // Plugin shutdown logic
     getLogger().info("Saving Workshop State...");
-    getState().save();
+    getState().saveDirty();
+    getState().compact();
+    if (!getState().flush(Settings.SAVE_SHUTDOWN_TIMEOUT.getValue(), TimeUnit.SECONDS)) {
+      getLogger().severe("Timed out waiting for Workshop State to save. Some data may be lost.");
+    }
 
     getLogger().info("Goodbye!");
   }
 
-  public void saveStateSynchronous() {
-    Bukkit.getScheduler().runTask(Workshop.getInstance(), () -> state.save());
-  }
-
 }
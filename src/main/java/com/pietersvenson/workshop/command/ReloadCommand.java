@@ -38,12 +38,12 @@ import javax.annotation.Nullable;
 public class ReloadCommand extends CommandNode {
 
   public ReloadCommand(@Nullable CommandNode parent) {
-    super(parent, Permissions.STAFF, "Reload all Workshop related data", "reload");
+    super(parent, Permissions.STAFF, "Reload Workshop data which changed on disk", "reload");
   }
 
   @Override
   public boolean onWrappedCommand(@Nonnull CommandSender sender, @Nonnull Command command, @Nonnull String label, @Nonnull String[] args) {
-    if (Workshop.getInstance().getState().load()) {
+    if (Workshop.getInstance().getState().reload()) {
       sender.sendMessage(Format.success("Data loaded!"));
       return true;
     } else {
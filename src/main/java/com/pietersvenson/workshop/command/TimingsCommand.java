@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.command;
+
+import com.pietersvenson.workshop.Workshop;
+import com.pietersvenson.workshop.command.common.CommandNode;
+import com.pietersvenson.workshop.command.common.LambdaCommandNode;
+import com.pietersvenson.workshop.command.common.Parameter;
+import com.pietersvenson.workshop.permission.Permissions;
+import com.pietersvenson.workshop.util.Format;
+import com.pietersvenson.workshop.util.Timing;
+import com.pietersvenson.workshop.util.Timings;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+public class TimingsCommand extends CommandNode {
+
+  public static final int SHOWN = 10;
+
+  public TimingsCommand(@Nullable CommandNode parent) {
+    super(parent, Permissions.STAFF, "Show where Workshop spends its time", "timings");
+    addSubcommand(Parameter.basic("<count>"), "Show the given number of the most costly handlers, tasks and commands");
+    addChildren(new TimingsDumpCommand(this), new TimingsResetCommand(this));
+  }
+
+  @Override
+  public boolean onWrappedCommand(@Nonnull CommandSender sender, @Nonnull Command command, @Nonnull String label, @Nonnull String[] args) {
+    int count;
+    try {
+      count = args.length < 1 ? SHOWN : Integer.parseInt(args[0]);
+    } catch (NumberFormatException e) {
+      sendCommandError(sender, "The count must be an integer");
+      return false;
+    }
+    if (count < 1) {
+      sendCommandError(sender, "The count must be positive");
+      return false;
+    }
+    List<Timing> timings = Timings.getByTotal();
+    if (timings.isEmpty()) {
+      sender.sendMessage(Format.info("Nothing has been timed yet"));
+      return true;
+    }
+    sender.sendMessage(Format.success("Workshop Timings (" + Math.min(count, timings.size()) + " of " + timings.size() + "):"));
+    timings.stream().limit(count).forEach(timing -> sender.sendMessage(ChatColor.GRAY + "- " + Format.INFO + Timings.describe(timing)));
+    return true;
+  }
+
+  static final class TimingsDumpCommand extends LambdaCommandNode {
+
+    public TimingsDumpCommand(@Nullable CommandNode parent) {
+      super(parent,
+          Permissions.STAFF,
+          "Write all timings to a file in the data folder",
+          "dump",
+          (sender, args) -> {
+            // The timings are read here so the report matches the moment of the command
+            String report = Timings.report(Timings.getByTotal());
+            File file = new File(Workshop.getInstance().getDataFolder(),
+                "timings-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt");
+            Bukkit.getScheduler().runTaskAsynchronously(Workshop.getInstance(), Timings.task("timings dump", () -> {
+              try {
+                Files.write(file.toPath(), report.getBytes(StandardCharsets.UTF_8));
+                Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("timings dump", () ->
+                    sender.sendMessage(Format.success("Timings written to " + file.getName()))));
+              } catch (IOException e) {
+                Workshop.getInstance().getLogger().severe("An error occurred trying to write the timings to "
+                    + file.getAbsolutePath());
+                e.printStackTrace();
+                Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("timings dump", () ->
+                    sender.sendMessage(Format.error("The timings couldn't be written. Check the console for more information."))));
+              }
+            }));
+            return true;
+          });
+    }
+
+  }
+
+  static final class TimingsResetCommand extends LambdaCommandNode {
+
+    public TimingsResetCommand(@Nullable CommandNode parent) {
+      super(parent,
+          Permissions.STAFF,
+          "Forget all timings recorded so far",
+          "reset",
+          (sender, args) -> {
+            Timings.reset();
+            sender.sendMessage(Format.success("Timings reset!"));
+            return true;
+          });
+    }
+
+  }
+
+}
@@ -69,6 +69,8 @@ public final class WorkshopCommandRoot extends CommandNode {
         new BanitemCommand(this),
         new ClassroomCommand(this),
         new ReloadCommand(this),
+        new ExportCommand(this),
+        new TimingsCommand(this),
         new NicknameCommand(this),
         new SpawnCommand(this),
         new TeleportAcceptCommand(this),
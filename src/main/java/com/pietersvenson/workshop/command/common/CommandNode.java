@@ -32,6 +32,8 @@ import com.pietersvenson.workshop.config.NullableSettingEnablee;
 import com.pietersvenson.workshop.config.Setting;
 import com.pietersvenson.workshop.permission.Permissions;
 import com.pietersvenson.workshop.util.Format;
+import com.pietersvenson.workshop.util.Timing;
+import com.pietersvenson.workshop.util.Timings;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -60,6 +62,8 @@ public abstract class CommandNode extends NullableSettingEnablee implements Comm
   private final List<String> aliases = Lists.newLinkedList();
   private final List<CommandNode> children = Lists.newLinkedList();
   private final Map<Parameter, String> parameters = Maps.newLinkedHashMap();
+  // Created on first use, because the parent's aliases aren't final while the tree is built
+  private Timing timing;
 
   /**
    * Simple constructor.
@@ -229,7 +233,7 @@ public abstract class CommandNode extends NullableSettingEnablee implements Comm
       return false;
     }
     if (actualArgs.length < 1) {
-      return onWrappedCommand(sender, command, label, actualArgs);
+      return onTimedCommand(sender, command, label, actualArgs);
     }
     for (CommandNode child : children) {
       for (String alias : child.aliases) {
@@ -244,7 +248,22 @@ public abstract class CommandNode extends NullableSettingEnablee implements Comm
       sender.sendMessage(Format.error("This command is not enabled"));
       return false;
     }
-    return onWrappedCommand(sender, command, label, actualArgs);
+    return onTimedCommand(sender, command, label, actualArgs);
+  }
+
+  private boolean onTimedCommand(@Nonnull CommandSender sender,
+                                 @Nonnull Command command,
+                                 @Nonnull String label,
+                                 @Nonnull String[] args) {
+    if (timing == null) {
+      timing = Timings.of("command /" + getFullCommand());
+    }
+    long start = System.nanoTime();
+    try {
+      return onWrappedCommand(sender, command, label, args);
+    } finally {
+      timing.record(start);
+    }
   }
 
   public abstract boolean onWrappedCommand(@Nonnull CommandSender sender,
@@ -25,6 +25,7 @@
 
 package com.pietersvenson.workshop.command.common;
 
+import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.config.Setting;
 import com.pietersvenson.workshop.permission.Permissions;
 import com.pietersvenson.workshop.util.Format;
@@ -42,6 +43,8 @@ public class EnablerCommandNode extends LambdaCommandNode {
         "enable",
         (sender, args) -> {
           enablerSetting.setValue(!enablerSetting.getValue());
+          Workshop.getInstance().getState().markDirty(Workshop.getInstance().getState().getConfigManager());
+          Workshop.getInstance().getState().refreshListeners();
           sender.sendMessage(Format.success("The feature associated with the "
               + Format.INFO + parent.getFullCommand()
               + Format.SUCCESS + " command has been "
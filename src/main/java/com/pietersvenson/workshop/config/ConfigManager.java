@@ -32,6 +32,7 @@ import org.bukkit.configuration.file.FileConfiguration;
 import javax.annotation.Nonnull;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class ConfigManager implements Stateful {
@@ -77,20 +78,30 @@ public class ConfigManager implements Stateful {
     return configuration.saveToString();
   }
 
-  public void loadSettings() {
+  /**
+   * Load all settings from the configuration, filling in defaults for any missing ones.
+   *
+   * @return true if any defaults were added to the configuration
+   */
+  public boolean loadSettings() {
+    AtomicBoolean defaulted = new AtomicBoolean(false);
     getSettings().forEach((key, value) -> {
       if (configuration.contains(key)) {
         value.setValue(configuration.get(key));
       } else {
         configuration.set(key, value.getValue());
+        defaulted.set(true);
       }
     });
+    return defaulted.get();
   }
 
   @Override
   public void loadState(String state) throws Exception {
     configuration.loadFromString(state);
-    loadSettings();
+    if (loadSettings()) {
+      Workshop.getInstance().getState().markDirty(this);
+    }
   }
 
   @Nonnull
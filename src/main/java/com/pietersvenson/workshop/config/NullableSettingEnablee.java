@@ -25,6 +25,7 @@
 
 package com.pietersvenson.workshop.config;
 
+import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.features.Enablee;
 
 import javax.annotation.Nullable;
@@ -60,6 +61,8 @@ public class NullableSettingEnablee implements Enablee {
       return false;
     }
     enablerSetting.setValue(true);
+    Workshop.getInstance().getState().markDirty(Workshop.getInstance().getState().getConfigManager());
+    Workshop.getInstance().getState().refreshListeners();
     return true;
   }
 
@@ -72,6 +75,8 @@ public class NullableSettingEnablee implements Enablee {
       return false;
     }
     enablerSetting.setValue(false);
+    Workshop.getInstance().getState().markDirty(Workshop.getInstance().getState().getConfigManager());
+    Workshop.getInstance().getState().refreshListeners();
     return true;
   }
 
@@ -36,6 +36,8 @@ public final class Settings {
 
   public static final Setting<Boolean> ENABLE_CLASSES = new Setting<>("features.classes.enable", true, Boolean.class);
   public static final Setting<Boolean> ENABLE_NICKNAME_PARTICIPANTS = new Setting<>("features.classes.nickname-participants", true, Boolean.class);
+  public static final Setting<Integer> REGISTRATION_PROMPT_INTERVAL = new Setting<>("features.classes.registration-prompt-interval", 5, Integer.class);
+  public static final Setting<Integer> CLASS_WARMUP_MINUTES = new Setting<>("features.classes.warmup-minutes", 10, Integer.class);
   public static final Setting<Boolean> ENABLE_FREEZE = new Setting<>("features.freeze.enable", true, Boolean.class);
   public static final Setting<Boolean> ENABLE_NICKNAME_COMMAND = new Setting<>("features.nicknames.enable", true, Boolean.class);
   public static final Setting<Boolean> ENABLE_HOMES = new Setting<>("features.homes.enable", true, Boolean.class);
@@ -48,6 +50,15 @@ public final class Settings {
   public static final Setting<Integer> EASY_MENU_TIMEOUT = new Setting<>("features.easy-menu.timeout", 10, Integer.class);
   public static final Setting<Integer> EASY_MENU_CLICK_COUNT = new Setting<>("features.easy-menu.click-count", 3, Integer.class);
 
+  public static final Setting<String> STATE_BACKEND = new Setting<>("state.backend", "files", String.class);
+  public static final Setting<String> STATE_FORMAT = new Setting<>("state.format", "binary", String.class);
+  public static final Setting<Integer> SAVE_DELAY = new Setting<>("state.save-delay", 100, Integer.class);
+  public static final Setting<Integer> JOURNAL_COMPACT_SIZE = new Setting<>("state.journal.compact-size", 256, Integer.class);
+  public static final Setting<Integer> SAVE_SHUTDOWN_TIMEOUT = new Setting<>("state.shutdown-timeout", 30, Integer.class);
+
+  public static final Setting<Integer> PLAYER_CONTEXT_REFRESH_TICKS = new Setting<>("player-context.refresh-ticks", 100, Integer.class);
+  public static final Setting<String> PROFILE_API = new Setting<>("external.profile-api", "https://api.mojang.com", String.class);
+
   public static final Setting<String> CONTACT_EMAIL = new Setting<>("features.classes.contact-email", "", String.class);
 
 
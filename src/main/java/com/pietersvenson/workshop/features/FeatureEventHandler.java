@@ -33,4 +33,12 @@ import java.lang.annotation.Target;
 @Target({ElementType.METHOD})
 @Retention(RetentionPolicy.RUNTIME)
 public @interface FeatureEventHandler {
+
+  /**
+   * Whether the handler is only registered while its listener is {@link FeatureListener#isDemanded() in demand}.
+   *
+   * @return true if the handler is registered on demand
+   */
+  boolean onDemand() default false;
+
 }
@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.features;
+
+import com.pietersvenson.workshop.Workshop;
+import org.bukkit.event.Event;
+
+import javax.annotation.Nonnull;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * A call to a {@link FeatureEventHandler} method, compiled once when the listener is registered
+ * so that dispatching an event doesn't go through reflection.
+ */
+@FunctionalInterface
+interface FeatureEventInvoker {
+
+  void invoke(@Nonnull FeatureListener listener, @Nonnull Event event) throws Throwable;
+
+  /**
+   * Compile an invoker for a handler method.
+   * If the method can't be linked directly, like when it isn't accessible from this package,
+   * this falls back to invoking it reflectively.
+   *
+   * @param method the handler method, taking a single event
+   * @return the invoker
+   */
+  @Nonnull
+  static FeatureEventInvoker compile(@Nonnull Method method) {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      MethodHandle handle = lookup.unreflect(method);
+      CallSite site = LambdaMetafactory.metafactory(lookup,
+          "invoke",
+          MethodType.methodType(FeatureEventInvoker.class),
+          MethodType.methodType(void.class, FeatureListener.class, Event.class),
+          handle,
+          MethodType.methodType(void.class, method.getDeclaringClass(), method.getParameterTypes()[0]));
+      return (FeatureEventInvoker) site.getTarget().invoke();
+    } catch (Throwable e) {
+      Workshop.getInstance().getLogger().warning("The handler " + method
+          + " couldn't be compiled and will be invoked reflectively");
+      method.setAccessible(true);
+      return (listener, event) -> method.invoke(listener, event);
+    }
+  }
+
+}
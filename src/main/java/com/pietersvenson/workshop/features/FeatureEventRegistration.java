@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.features;
+
+import com.pietersvenson.workshop.Workshop;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.RegisteredListener;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Method;
+
+/**
+ * The registration of a single {@link FeatureEventHandler} method in its event's {@link HandlerList}.
+ * It is only present in the handler list while the listener's feature is enabled,
+ * and, for on-demand handlers, while the listener is in demand.
+ */
+final class FeatureEventRegistration {
+
+  private final FeatureListener listener;
+  private final boolean onDemand;
+  private final HandlerList handlerList;
+  private final RegisteredListener registeredListener;
+  private boolean registered = false;
+
+  FeatureEventRegistration(@Nonnull FeatureListener listener,
+                           @Nonnull Class<? extends Event> type,
+                           boolean onDemand,
+                           @Nonnull EventExecutor executor) {
+    this.listener = listener;
+    this.onDemand = onDemand;
+    this.handlerList = getHandlerList(type);
+    this.registeredListener = new RegisteredListener(listener,
+        executor,
+        EventPriority.NORMAL,
+        Workshop.getInstance(),
+        false);
+  }
+
+  boolean isOnDemand() {
+    return onDemand;
+  }
+
+  /**
+   * Add or remove the handler from its handler list to match the state of its listener.
+   * This must be called from the main thread.
+   */
+  void refresh() {
+    boolean wanted = listener.isEnabled() && (!onDemand || listener.isDemanded());
+    if (wanted == registered) {
+      return;
+    }
+    if (wanted) {
+      handlerList.register(registeredListener);
+    } else {
+      handlerList.unregister(registeredListener);
+    }
+    registered = wanted;
+  }
+
+  /**
+   * Find the handler list of an event the same way Bukkit does, from the closest class declaring one.
+   */
+  @Nonnull
+  private static HandlerList getHandlerList(@Nonnull Class<?> type) {
+    for (Class<?> clazz = type; clazz != null && Event.class.isAssignableFrom(clazz); clazz = clazz.getSuperclass()) {
+      try {
+        Method method = clazz.getDeclaredMethod("getHandlerList");
+        method.setAccessible(true);
+        return (HandlerList) method.invoke(null);
+      } catch (NoSuchMethodException e) {
+        // Keep looking in the superclass
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalArgumentException("The handler list of " + type.getName() + " couldn't be read", e);
+      }
+    }
+    throw new IllegalArgumentException("No handler list was found for " + type.getName());
+  }
+
+}
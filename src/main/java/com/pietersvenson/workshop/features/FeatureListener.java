@@ -29,12 +29,22 @@ import com.pietersvenson.workshop.config.NullableSettingEnablee;
 import com.pietersvenson.workshop.config.Setting;
 import org.bukkit.event.Listener;
 
-import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 public abstract class FeatureListener extends NullableSettingEnablee implements Listener {
 
-  protected FeatureListener(@Nonnull Setting<Boolean> enablerSetting) {
+  protected FeatureListener(@Nullable Setting<Boolean> enablerSetting) {
     super(enablerSetting);
   }
 
+  /**
+   * Check whether the state which this listener's on-demand handlers react to is present.
+   * Managers must {@link FeatureManager#refreshListeners() refresh their listeners} whenever it may have changed.
+   *
+   * @return true if the on-demand handlers should be registered
+   */
+  public boolean isDemanded() {
+    return true;
+  }
+
 }
@@ -25,49 +25,77 @@
 
 package com.pietersvenson.workshop.features;
 
+import com.google.common.collect.Lists;
 import com.pietersvenson.workshop.Workshop;
-import org.bukkit.Bukkit;
+import com.pietersvenson.workshop.util.Timing;
+import com.pietersvenson.workshop.util.Timings;
 import org.bukkit.event.Event;
-import org.bukkit.event.EventPriority;
 
 import javax.annotation.Nonnull;
-import java.lang.reflect.Parameter;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 public abstract class FeatureManager {
 
+  private final List<FeatureEventRegistration> registrations = Lists.newArrayList();
+
   protected FeatureManager() {
     registerListeners();
+    // The state which decides the demand for listeners isn't loaded yet
+    registrations.stream()
+        .filter(registration -> !registration.isOnDemand())
+        .forEach(FeatureEventRegistration::refresh);
   }
 
   private void registerListeners() {
     getListeners().forEach(listener -> Arrays.stream(listener.getClass().getMethods())
         .filter(method -> method.isAnnotationPresent(FeatureEventHandler.class))
-        .filter(method -> method.getParameters().length == 1)
+        .filter(method -> method.getParameterCount() == 1)
         .forEach(method -> {
-          Parameter parameter = method.getParameters()[0];
-          if (!Event.class.isAssignableFrom(parameter.getType())) {
+          Class<?> type = method.getParameterTypes()[0];
+          if (!Event.class.isAssignableFrom(type)) {
             return;
           }
-          Bukkit.getPluginManager().registerEvent((Class<? extends Event>) parameter.getType(),
-              listener,
-              EventPriority.NORMAL,
-              (li, event) -> {
-                try {
-                  if (listener.isEnabled() && event.getClass().equals(parameter.getType())) {
-                    method.invoke(li, event);
+          FeatureEventInvoker invoker = FeatureEventInvoker.compile(method);
+          Timing timing = Timings.of("event " + listener.getClass().getSimpleName() + "#" + method.getName());
+          try {
+            registrations.add(new FeatureEventRegistration(listener,
+                type.asSubclass(Event.class),
+                method.getAnnotation(FeatureEventHandler.class).onDemand(),
+                (li, event) -> {
+                  try {
+                    if (event.getClass() == type) {
+                      long start = System.nanoTime();
+                      try {
+                        invoker.invoke(listener, event);
+                      } finally {
+                        timing.record(start);
+                      }
+                    }
+                  } catch (Throwable e) {
+                    Workshop.getInstance().getLogger().severe("Exception trying to use a listener for: "
+                        + type.toString()
+                        + " with: " + event.getClass().toString());
+                    e.printStackTrace();
                   }
-                } catch (Exception e) {
-                  Workshop.getInstance().getLogger().severe("Exception trying to use a listener for: "
-                      + parameter.getType().toString()
-                      + " with: " + event.getClass().toString());
-                  e.printStackTrace();
-                }
-              }, Workshop.getInstance());
+                }));
+          } catch (IllegalArgumentException e) {
+            Workshop.getInstance().getLogger().severe("The handler " + method + " couldn't be registered");
+            e.printStackTrace();
+          }
         }));
   }
 
+  /**
+   * Register the handlers of this feature which are needed now, and unregister the ones which aren't,
+   * because the feature was enabled or disabled or the demand for its listeners changed.
+   * This must be called from the main thread.
+   */
+  public void refreshListeners() {
+    registrations.forEach(FeatureEventRegistration::refresh);
+  }
+
   @Nonnull
   protected abstract Collection<FeatureListener> getListeners();
 
@@ -29,7 +29,6 @@ import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.config.Settings;
 import com.pietersvenson.workshop.features.FeatureEventHandler;
 import com.pietersvenson.workshop.features.FeatureListener;
-import com.pietersvenson.workshop.permission.Permissions;
 import org.bukkit.event.entity.EntityPickupItemEvent;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCreativeEvent;
@@ -50,7 +49,7 @@ public class BanitemListener extends FeatureListener {
 
   @FeatureEventHandler
   public void onInventoryCreative(InventoryCreativeEvent inventoryCreativeEvent) {
-    if (!inventoryCreativeEvent.getWhoClicked().hasPermission(Permissions.STAFF)) {
+    if (!Workshop.getInstance().getState().getPlayerContexts().isStaff(inventoryCreativeEvent.getWhoClicked())) {
       Workshop.getInstance()
           .getState()
           .getBanitemManager()
@@ -60,7 +59,7 @@ public class BanitemListener extends FeatureListener {
 
   @FeatureEventHandler
   public void onInventoryClick(InventoryClickEvent inventoryClickEvent) {
-    if (!inventoryClickEvent.getWhoClicked().hasPermission(Permissions.STAFF)) {
+    if (!Workshop.getInstance().getState().getPlayerContexts().isStaff(inventoryClickEvent.getWhoClicked())) {
       Workshop.getInstance()
           .getState()
           .getBanitemManager()
@@ -70,7 +69,7 @@ public class BanitemListener extends FeatureListener {
 
   @FeatureEventHandler
   public void onInventoryDrop(PlayerDropItemEvent dropItemEvent) {
-    if (!dropItemEvent.getPlayer().hasPermission(Permissions.STAFF)) {
+    if (!Workshop.getInstance().getState().getPlayerContexts().isStaff(dropItemEvent.getPlayer())) {
       if (Workshop.getInstance().getState().getBanitemManager().isBanned(dropItemEvent.getItemDrop().getItemStack().getType())) {
         dropItemEvent.getItemDrop().remove();
       }
@@ -80,7 +79,7 @@ public class BanitemListener extends FeatureListener {
   @FeatureEventHandler
   public void onInventoryPickup(EntityPickupItemEvent pickupItemEvent) {
     if ((pickupItemEvent.getEntity() instanceof InventoryHolder)
-        && !pickupItemEvent.getEntity().hasPermission(Permissions.STAFF)
+        && !Workshop.getInstance().getState().getPlayerContexts().isStaff(pickupItemEvent.getEntity())
         && Workshop.getInstance().getState().getBanitemManager().isBanned(pickupItemEvent.getItem().getItemStack().getType())) {
       Workshop.getInstance()
           .getState()
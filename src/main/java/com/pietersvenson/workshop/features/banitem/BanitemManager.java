@@ -31,8 +31,11 @@ import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.config.Settings;
 import com.pietersvenson.workshop.features.FeatureListener;
 import com.pietersvenson.workshop.features.FeatureManager;
-import com.pietersvenson.workshop.permission.Permissions;
-import com.pietersvenson.workshop.state.Stateful;
+import com.pietersvenson.workshop.state.BinaryStateful;
+import com.pietersvenson.workshop.state.SqlStateful;
+import com.pietersvenson.workshop.state.StateInput;
+import com.pietersvenson.workshop.state.StateOutput;
+import com.pietersvenson.workshop.util.Timings;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.inventory.Inventory;
@@ -42,14 +45,21 @@ import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-public class BanitemManager extends FeatureManager implements Stateful {
+public class BanitemManager extends FeatureManager implements SqlStateful, BinaryStateful {
 
   Set<String> banned = Sets.newHashSet();
 
@@ -64,13 +74,8 @@ public class BanitemManager extends FeatureManager implements Stateful {
       return false;
     }
     boolean out = this.banned.add(item.toString().toUpperCase());
-    Workshop.getInstance().saveStateSynchronous();
-    if (Settings.ENABLE_BANITEM.getValue()) {
-      Bukkit.getOnlinePlayers()
-          .stream()
-          .filter(player -> !player.hasPermission(Permissions.STAFF))
-          .forEach(player -> scheduledClean(player.getInventory()));
-    }
+    Workshop.getInstance().getState().record(this, "ban", item.toString().toUpperCase());
+    cleanOnlinePlayers();
     return out;
   }
 
@@ -82,7 +87,7 @@ public class BanitemManager extends FeatureManager implements Stateful {
    */
   public boolean unban(Material item) {
     boolean out = this.banned.remove(item.toString().toUpperCase());
-    Workshop.getInstance().saveStateSynchronous();
+    Workshop.getInstance().getState().record(this, "unban", item.toString().toUpperCase());
     return out;
   }
 
@@ -102,20 +107,29 @@ public class BanitemManager extends FeatureManager implements Stateful {
         .collect(Collectors.toList());
   }
 
+  private void cleanOnlinePlayers() {
+    if (Settings.ENABLE_BANITEM.getValue()) {
+      Bukkit.getOnlinePlayers()
+          .stream()
+          .filter(player -> !Workshop.getInstance().getState().getPlayerContexts().isStaff(player))
+          .forEach(player -> scheduledClean(player.getInventory()));
+    }
+  }
+
   /**
    * Schedule a clean of a given inventory, which removes all banned items.
    *
    * @param inventory the inventory to clean
    */
   public void scheduledClean(Inventory inventory) {
-    Bukkit.getScheduler().runTask(Workshop.getInstance(), () -> {
+    Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("banitem clean", () -> {
       for (int i = 0; i < inventory.getSize(); i++) {
         ItemStack itemStack = inventory.getItem(i);
         if (itemStack != null && isBanned(itemStack.getType())) {
           inventory.clear(i);
         }
       }
-    });
+    }));
   }
 
   @Nonnull
@@ -127,30 +141,157 @@ public class BanitemManager extends FeatureManager implements Stateful {
   @Nonnull
   @Override
   public String dumpState() {
-    DumperOptions dumperOptions = new DumperOptions();
-    dumperOptions.setIndent(2);
-    dumperOptions.setPrettyFlow(true);
-    return new Yaml(dumperOptions).dump(banned.toArray());
+    return snapshotState().get();
+  }
+
+  @Nonnull
+  @Override
+  public Supplier<String> snapshotState() {
+    Object[] serialized = banned.toArray();
+    return () -> {
+      DumperOptions dumperOptions = new DumperOptions();
+      dumperOptions.setIndent(2);
+      dumperOptions.setPrettyFlow(true);
+      return new Yaml(dumperOptions).dump(serialized);
+    };
+  }
+
+  @Override
+  public void loadState(String state) throws Exception {
+    parseState(state).install();
   }
 
+  @Nonnull
   @Override
-  public void loadState(String state) throws YAMLException {
+  public Installer parseState(String state) throws YAMLException {
     List<String> toAdd = Lists.newLinkedList();
     try {
       toAdd.addAll(new Yaml().<List<String>>load(state));
     } catch (Exception e) {
       throw new YAMLException(e);
     }
-    banned.clear();
+    Set<String> parsed = Sets.newHashSet();
     toAdd.forEach(name -> {
       Material material = Material.matchMaterial(name);
-      if (material == null || !ban(material)) {
+      if (material == null || !material.isItem() || !parsed.add(material.toString().toUpperCase())) {
         Workshop.getInstance().getLogger().warning(
             "An invalid or duplicate banned item was found: "
                 + name
                 + ". This has been skipped.");
       }
     });
+    return () -> install(parsed);
+  }
+
+  private void install(@Nonnull Set<String> parsed) {
+    // Inventories only need to be swept for newly banned items
+    boolean added = !banned.containsAll(parsed);
+    banned = parsed;
+    if (added) {
+      cleanOnlinePlayers();
+    }
+  }
+
+  @Override
+  public int getBinaryVersion() {
+    return 1;
+  }
+
+  @Nonnull
+  @Override
+  public StateOutput.Encoder snapshotBinaryState() {
+    List<String> captured = Lists.newArrayList(banned);
+    return out -> {
+      out.writeInt(captured.size());
+      for (String name : captured) {
+        out.writeString(name);
+      }
+    };
+  }
+
+  @Nonnull
+  @Override
+  public Installer readState(@Nonnull StateInput in, int version) throws IOException {
+    int count = in.readInt();
+    Set<String> parsed = Sets.newHashSetWithExpectedSize(count);
+    for (int i = 0; i < count; i++) {
+      parsed.add(in.readString());
+    }
+    return () -> install(parsed);
+  }
+
+  @Override
+  public void replay(@Nonnull String operation, @Nonnull List<String> arguments) {
+    switch (operation) {
+      case "ban":
+        banned.add(arguments.get(0));
+        break;
+      case "unban":
+        banned.remove(arguments.get(0));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown banitem operation: " + operation);
+    }
+  }
+
+  @Override
+  public void createTables(@Nonnull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE IF NOT EXISTS banned_items (material TEXT PRIMARY KEY)");
+    }
+  }
+
+  @Override
+  public void applyToTables(@Nonnull Connection connection,
+                            @Nonnull String operation,
+                            @Nonnull List<String> arguments) throws SQLException {
+    String sql;
+    switch (operation) {
+      case "ban":
+        sql = "INSERT OR IGNORE INTO banned_items (material) VALUES (?)";
+        break;
+      case "unban":
+        sql = "DELETE FROM banned_items WHERE material = ?";
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown banitem operation: " + operation);
+    }
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setString(1, arguments.get(0));
+      statement.executeUpdate();
+    }
+  }
+
+  @Nonnull
+  @Override
+  public TableWriter snapshotTables() {
+    List<String> serialized = Lists.newArrayList(banned);
+    return connection -> {
+      try (Statement statement = connection.createStatement()) {
+        statement.executeUpdate("DELETE FROM banned_items");
+      }
+      try (PreparedStatement statement = connection.prepareStatement(
+          "INSERT INTO banned_items (material) VALUES (?)")) {
+        for (String name : serialized) {
+          statement.setString(1, name);
+          statement.addBatch();
+        }
+        statement.executeBatch();
+      }
+    };
+  }
+
+  @Nonnull
+  @Override
+  public Installer readTables(@Nonnull Connection connection) throws SQLException {
+    Set<String> parsed = Sets.newHashSet();
+    try (Statement statement = connection.createStatement();
+         ResultSet result = statement.executeQuery("SELECT material FROM banned_items")) {
+      while (result.next()) {
+        parsed.add(result.getString("material"));
+      }
+    }
+    return () -> install(parsed);
   }
 
   @Nonnull
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.features.classes;
+
+import com.google.common.collect.ImmutableSet;
+import com.pietersvenson.workshop.config.Settings;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * An immutable snapshot of who may log in, so that it can be decided off of the main thread
+ * before the player joins the world. Staff are let in before this is checked.
+ */
+final class Admission {
+
+  /**
+   * Admits everyone, because no classrooms exist.
+   */
+  static final Admission OPEN = new Admission(false, null, false, ImmutableSet.of());
+
+  private final boolean restricted;
+  private final String sessionName;
+  private final boolean isPublic;
+  private final Set<UUID> participants;
+
+  private Admission(boolean restricted,
+                    @Nullable String sessionName,
+                    boolean isPublic,
+                    @Nonnull Set<UUID> participants) {
+    this.restricted = restricted;
+    this.sessionName = sessionName;
+    this.isPublic = isPublic;
+    this.participants = participants;
+  }
+
+  /**
+   * Admit nobody but staff, because no classroom is in session.
+   *
+   * @return the admission
+   */
+  static Admission closed() {
+    return new Admission(true, null, false, ImmutableSet.of());
+  }
+
+  /**
+   * Admit the participants of the classroom in session, or anyone if it's public.
+   *
+   * @param classroom    the classroom in session
+   * @param participants an immutable set of the participants
+   * @return the admission
+   */
+  static Admission session(@Nonnull Classroom classroom, @Nonnull Set<UUID> participants) {
+    return new Admission(true, classroom.getName(), classroom.isPublic(), participants);
+  }
+
+  /**
+   * Check whether a player who isn't staff may log in.
+   *
+   * @param player the uuid of the player
+   * @return the reason they are turned away, or empty if they are admitted
+   */
+  @Nonnull
+  Optional<String> check(@Nonnull UUID player) {
+    if (!restricted) {
+      return Optional.empty();
+    }
+    if (sessionName == null) {
+      return Optional.of("There are no classes currently in progress!");
+    }
+    if (isPublic || participants.contains(player)) {
+      return Optional.empty();
+    }
+    return Optional.of(notRegisteredMessage(sessionName));
+  }
+
+  static String notRegisteredMessage(@Nonnull String classroomName) {
+    return "You're not registered for this class. \n"
+        + classroomName
+        + (Settings.CONTACT_EMAIL.getValue().isEmpty()
+        ? ""
+        : "\n\n" + String.format(
+        "Please contact %s if you think this is an error.",
+        Settings.CONTACT_EMAIL.getValue()));
+  }
+
+}
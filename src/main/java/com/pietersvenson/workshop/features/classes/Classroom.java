@@ -25,26 +25,32 @@
 
 package com.pietersvenson.workshop.features.classes;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.config.Settings;
+import com.pietersvenson.workshop.state.StateInput;
+import com.pietersvenson.workshop.state.StateOutput;
 import com.pietersvenson.workshop.util.External;
 import com.pietersvenson.workshop.util.Format;
 import lombok.Data;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
+import lombok.ToString;
+import org.bukkit.Bukkit;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.text.ParseException;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -54,49 +60,89 @@ public class Classroom {
   @NonNull
   private final String id;
   @Getter
-  @Setter
   @NonNull
   private String name;
   @Getter
-  @Setter
   @NonNull
   private Curriculum curriculum = Curriculum.NONE;
   @Getter
-  @Setter
   @NonNull
   private Schedule schedule = Schedule.empty();
-  @Getter
-  @NonNull
-  private final List<Participant> participants = Lists.newLinkedList();
+  // The roster in order of registration, indexed by the uuids of the players
+  private final Map<UUID, Participant> participants = Maps.newLinkedHashMap();
   private Map<UUID, RegistrationForm> registering = Maps.newHashMap();
   private boolean publiC = false;
+  // Counts changes to everything which is serialized, except for the schedule, which counts its own
+  private int modCount = 0;
+  private volatile Fragment<String> fragment;
+  private volatile Fragment<byte[]> binaryFragment;
 
   public Classroom(@Nonnull String id) {
     this.id = Objects.requireNonNull(id);
     this.name = Objects.requireNonNull(id);
   }
 
+  public void setName(@Nonnull String name) {
+    this.name = Objects.requireNonNull(name);
+    modCount++;
+  }
+
+  public void setCurriculum(@Nonnull Curriculum curriculum) {
+    this.curriculum = Objects.requireNonNull(curriculum);
+    modCount++;
+  }
+
+  public void setSchedule(@Nonnull Schedule schedule) {
+    this.schedule = Objects.requireNonNull(schedule);
+    modCount++;
+  }
+
+  /**
+   * Get the participants in the order they registered.
+   *
+   * @return an unmodifiable view of the participants
+   */
+  @Nonnull
+  public Collection<Participant> getParticipants() {
+    return Collections.unmodifiableCollection(participants.values());
+  }
+
+  @Nonnull
+  public Optional<Participant> getParticipant(@Nonnull UUID playerUuid) {
+    return Optional.ofNullable(participants.get(playerUuid));
+  }
+
+  /**
+   * Add a participant, replacing any participant with the same uuid.
+   *
+   * @param participant the participant
+   * @return true
+   */
   public boolean addParticipant(@Nonnull Participant participant) {
-    return participants.add(Objects.requireNonNull(participant));
+    Objects.requireNonNull(participant);
+    modCount++;
+    participants.put(participant.getPlayerUuid(), participant);
+    return true;
   }
 
   public boolean addParticipants(@Nonnull Collection<Participant> participant) {
-    return participants.addAll(Objects.requireNonNull(participant));
+    Objects.requireNonNull(participant).forEach(this::addParticipant);
+    return !participant.isEmpty();
   }
 
   /**
-   * Removes all participants with this uuid.
+   * Removes the participant with this uuid.
    *
    * @param playerUuid the uuid of the player
-   * @return true if any participants were removed
+   * @return true if a participant was removed
    */
   public boolean removeParticipant(UUID playerUuid) {
-    return participants.removeIf(participant -> participant.getPlayerUuid().equals(playerUuid));
+    modCount++;
+    return participants.remove(playerUuid) != null;
   }
 
   public boolean inClass(@Nonnull UUID playerUuid) {
-    return participants.stream().anyMatch(participant ->
-        Objects.requireNonNull(playerUuid).equals(participant.getPlayerUuid()));
+    return participants.containsKey(Objects.requireNonNull(playerUuid));
   }
 
   public boolean inSession() {
@@ -108,7 +154,7 @@ public class Classroom {
   }
 
   public boolean isRegistered(UUID uuid) {
-    return participants.stream().map(Participant::getPlayerUuid).anyMatch(u -> u.equals(uuid));
+    return participants.containsKey(uuid);
   }
 
   @Override
@@ -134,7 +180,7 @@ public class Classroom {
     out.getValue().put("name", name);
     out.getValue().put("curriculum", curriculum.name());
     out.getValue().put("schedule", schedule.serialize());
-    out.getValue().put("participants", participants.stream().map(Participant::serialize).collect(Collectors.toList()));
+    out.getValue().put("participants", participants.values().stream().map(Participant::serialize).collect(Collectors.toList()));
     return out;
   }
 
@@ -156,6 +202,106 @@ public class Classroom {
     return classroom;
   }
 
+  /**
+   * Get a number which changes whenever anything in {@link #serialize()} changes.
+   *
+   * @return the version
+   */
+  long getVersion() {
+    return ((long) modCount << 32) | (schedule.getModCount() & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Get the cached encoding of this classroom, if it is still current.
+   *
+   * @return the encoded classroom
+   */
+  Optional<String> getCachedFragment() {
+    Fragment<String> cached = fragment;
+    if (cached == null || cached.version != getVersion()) {
+      return Optional.empty();
+    }
+    return Optional.of(cached.value);
+  }
+
+  /**
+   * Cache an encoding of this classroom. This may be called from any thread.
+   *
+   * @param version the version the encoding was made from
+   * @param text    the encoded classroom
+   */
+  void cacheFragment(long version, @Nonnull String text) {
+    fragment = new Fragment<>(version, text);
+  }
+
+  /**
+   * Capture this classroom so it can be encoded in the binary state format off of the main thread.
+   * The bytes from the last time are reused if nothing changed since then.
+   * Otherwise, the fields which are written are copied, which doesn't copy any appointment objects.
+   *
+   * @return the encoder of the captured classroom
+   */
+  @Nonnull
+  StateOutput.Encoder snapshotBinary() {
+    long version = getVersion();
+    Fragment<byte[]> cached = binaryFragment;
+    if (cached != null && cached.version == version) {
+      byte[] encoded = cached.value;
+      return out -> out.writeEncoded(encoded);
+    }
+    Classroom copy = new Classroom(id);
+    copy.name = name;
+    copy.curriculum = curriculum;
+    copy.schedule = schedule.copy();
+    copy.participants.putAll(participants);
+    return out -> {
+      byte[] encoded = StateOutput.encode(copy::write);
+      binaryFragment = new Fragment<>(version, encoded);
+      out.writeEncoded(encoded);
+    };
+  }
+
+  /**
+   * Write this classroom in the binary state format.
+   *
+   * @param out the output
+   * @throws IOException if it could not be written
+   */
+  public void write(@Nonnull StateOutput out) throws IOException {
+    out.writeString(id);
+    out.writeString(name);
+    out.writeString(curriculum.name());
+    schedule.write(out);
+    out.writeInt(participants.size());
+    for (Participant participant : participants.values()) {
+      participant.write(out);
+    }
+  }
+
+  /**
+   * Read a classroom written by {@link #write(StateOutput)}.
+   *
+   * @param in      the input
+   * @param version the version of the binary state
+   * @return the classroom
+   * @throws IOException if the data is malformed
+   */
+  public static Classroom read(@Nonnull StateInput in, int version) throws IOException {
+    Classroom classroom = new Classroom(in.readString());
+    classroom.setName(in.readString());
+    try {
+      classroom.setCurriculum(Curriculum.valueOf(in.readString()));
+    } catch (IllegalArgumentException e) {
+      classroom.setCurriculum(Curriculum.NONE);
+    }
+    classroom.setSchedule(Schedule.read(in, version));
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      classroom.addParticipant(Participant.read(in));
+    }
+    return classroom;
+  }
+
   public static boolean isValidName(String s) {
     return !s.isEmpty() && !Pattern.compile(".*[^a-zA-Z0-9 ].*").matcher(s).find();
   }
@@ -164,6 +310,10 @@ public class Classroom {
     return Optional.ofNullable(this.registering.get(player));
   }
 
+  public boolean hasRegistering() {
+    return !registering.isEmpty();
+  }
+
   public boolean isRegistering(UUID player) {
     return getRegistrationForm(player).isPresent();
   }
@@ -193,6 +343,18 @@ public class Classroom {
     return this.publiC;
   }
 
+  private static final class Fragment<T> {
+
+    private final long version;
+    private final T value;
+
+    private Fragment(long version, @Nonnull T value) {
+      this.version = version;
+      this.value = value;
+    }
+
+  }
+
   @Data
   public static class Participant {
 
@@ -201,13 +363,53 @@ public class Classroom {
     private final UUID playerUuid;
     @Getter
     @Setter
-    private String lastKnownUsername;
+    private volatile String lastKnownUsername;
+    // Looked up on demand rather than for every participant when the classrooms are loaded
+    @ToString.Exclude
+    private transient CompletableFuture<Optional<String>> usernameLookup;
+    @ToString.Exclude
+    private transient String displayName;
 
     public Participant(@Nonnull String firstName, @Nonnull String lastName, @Nonnull UUID uuid) {
       this.firstName = Objects.requireNonNull(firstName);
       this.lastName = Objects.requireNonNull(lastName);
       this.playerUuid = Objects.requireNonNull(uuid);
-      External.getPlayerName(this.getPlayerUuid()).thenAccept(nameOp -> nameOp.ifPresent(this::setLastKnownUsername));
+    }
+
+    /**
+     * Find the current username of this participant. The server's own cache is checked first,
+     * and only one network lookup is made. This must be called from the main thread.
+     *
+     * @return the username, once it's known
+     */
+    @Nonnull
+    public CompletableFuture<Optional<String>> resolveUsername() {
+      if (usernameLookup == null) {
+        String cached = Bukkit.getOfflinePlayer(playerUuid).getName();
+        if (cached != null) {
+          lastKnownUsername = cached;
+          usernameLookup = CompletableFuture.completedFuture(Optional.of(cached));
+        } else {
+          usernameLookup = External.getPlayerName(playerUuid).thenApply(name -> {
+            name.ifPresent(this::setLastKnownUsername);
+            return name;
+          });
+        }
+      }
+      return usernameLookup;
+    }
+
+    /**
+     * Get the name this participant is shown as, from {@link Format#participantDisplayName(Participant)}.
+     *
+     * @return the display name
+     */
+    @Nonnull
+    public String getDisplayName() {
+      if (displayName == null) {
+        displayName = Format.participantDisplayName(this);
+      }
+      return displayName;
     }
 
     Map<String, String> serialize() {
@@ -219,12 +421,20 @@ public class Classroom {
     }
 
     static Participant deserialize(Map<String, String> data) {
-      Participant out = new Participant(
+      return new Participant(
           data.get("first_name"),
           data.get("last_name"),
           UUID.fromString(data.get("mc_uuid")));
-      External.getPlayerName(out.getPlayerUuid()).thenAccept(nameOp -> nameOp.ifPresent(out::setLastKnownUsername));
-      return out;
+    }
+
+    void write(@Nonnull StateOutput out) throws IOException {
+      out.writeString(firstName);
+      out.writeString(lastName);
+      out.writeUuid(playerUuid);
+    }
+
+    static Participant read(@Nonnull StateInput in) throws IOException {
+      return new Participant(in.readString(), in.readString(), in.readUuid());
     }
 
     public boolean giveNickname() {
@@ -232,7 +442,7 @@ public class Classroom {
         return false;
       }
       try {
-        Workshop.getInstance().getState().getNicknameManager().setNickname(playerUuid, Format.participantDisplayName(this));
+        Workshop.getInstance().getState().getNicknameManager().setNickname(playerUuid, getDisplayName());
         return true;
       } catch (UnsupportedOperationException e) {
         return false;
@@ -30,14 +30,17 @@ import com.pietersvenson.workshop.config.Settings;
 import com.pietersvenson.workshop.features.FeatureEventHandler;
 import com.pietersvenson.workshop.features.FeatureListener;
 import com.pietersvenson.workshop.permission.Permissions;
+import com.pietersvenson.workshop.player.PlayerContext;
 import com.pietersvenson.workshop.util.Communication;
 import com.pietersvenson.workshop.util.Format;
+import com.pietersvenson.workshop.util.Timings;
 import com.pietersvenson.workshop.util.Validate;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
@@ -46,6 +49,8 @@ import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 public class ClassroomListener extends FeatureListener {
 
@@ -53,14 +58,47 @@ public class ClassroomListener extends FeatureListener {
     super(Settings.ENABLE_CLASSES);
   }
 
+  @Override
+  public boolean isDemanded() {
+    return Workshop.getInstance().getState().getClassroomManager().getInSession()
+        .map(Classroom::hasRegistering)
+        .orElse(false);
+  }
+
+  /**
+   * Turn players away before they join the world, if they aren't registered for the class in session.
+   * This runs off of the main thread, so it only reads snapshots.
+   * Only players known not to be staff are turned away here, anyone else is checked when they join.
+   */
+  @FeatureEventHandler
+  public void onPlayerPreLogin(AsyncPlayerPreLoginEvent preLoginEvent) {
+    UUID uuid = preLoginEvent.getUniqueId();
+    if (!Workshop.getInstance().getState().getStaffRoster().isKnownNonStaff(uuid)) {
+      return;
+    }
+    Optional<String> rejection = Workshop.getInstance().getState().getClassroomManager().checkAdmission(uuid);
+    if (rejection.isPresent()) {
+      preLoginEvent.disallow(AsyncPlayerPreLoginEvent.Result.KICK_WHITELIST, rejection.get());
+      String name = preLoginEvent.getName();
+      Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("classroom pre-login", () -> {
+        if (Workshop.getInstance().getState().getClassroomManager().getInSession().isPresent()) {
+          Communication.sendStaffMessage(Format.warn("The player "
+              + name
+              + " just tried to log in but is not registered for a class in session"));
+        }
+      }));
+    }
+  }
+
   @FeatureEventHandler
   public void onPlayerJoin(PlayerJoinEvent playerJoinEvent) {
     Player player = playerJoinEvent.getPlayer();
     Optional<Classroom> progressing = Workshop.getInstance().getState().getClassroomManager().getInSession();
+    Workshop.getInstance().getState().getStaffRoster().update(player);
 
     if (!player.hasPermission(Permissions.STAFF)) {
 
-      // Ensure they are allowed in the server
+      // Admission was decided before login, so this only catches sessions which changed since then
       if (Workshop.getInstance().getState().getClassroomManager().hasAny()) {
         if (!progressing.isPresent()) {
           player.kickPlayer(
@@ -68,7 +106,7 @@ public class ClassroomListener extends FeatureListener {
           return;
         } else {
           // Get first one. There shouldn't be any more than that.
-          Optional<Classroom.Participant> participant = progressing.get().getParticipants().stream().filter(part -> part.getPlayerUuid().equals(player.getUniqueId())).findAny();
+          Optional<Classroom.Participant> participant = progressing.get().getParticipant(player.getUniqueId());
           if (participant.isPresent()) {
             // Welcome them to the class!
             player.sendMessage(Format.info("Welcome to "
@@ -83,16 +121,13 @@ public class ClassroomListener extends FeatureListener {
             Optional<RegistrationForm> form = progressing.get().getRegistrationForm(player.getUniqueId());
             if (!form.isPresent()) {
               form = Optional.of(progressing.get().startRegistering(player.getUniqueId()));
+              Workshop.getInstance().getState().getClassroomManager().refreshListeners();
+              Workshop.getInstance().getState().getPlayerContexts().refresh(player);
             }
+            form.get().reset();
             notify(player, form.get());
           } else {
-            player.kickPlayer("You're not registered for this class. \n"
-                + progressing.get().getName() +
-                (Settings.CONTACT_EMAIL.getValue().isEmpty()
-                    ? ""
-                    : "\n\n" + String.format(
-                    "Please contact %s if you think this is an error.",
-                    Settings.CONTACT_EMAIL.getValue())));
+            player.kickPlayer(Admission.notRegisteredMessage(progressing.get().getName()));
             Communication.sendStaffMessage(Format.warn("The player "
                 + player.getName()
                 + " just tried to log in but is not registered for a class in session"));
@@ -102,38 +137,40 @@ public class ClassroomListener extends FeatureListener {
     }
   }
 
-  @FeatureEventHandler
+  @FeatureEventHandler(onDemand = true)
   public void onPlayerMove(PlayerMoveEvent playerMoveEvent) {
-    if (!playerMoveEvent.getPlayer().hasPermission(Permissions.STAFF)) {
-      if (!Workshop.getInstance().getState().getClassroomManager().getInSession().isPresent()) {
-        return;
-      }
-      if (!Workshop.getInstance().getState().getClassroomManager().getInSession().get().isPublic()) {
+    Location from = playerMoveEvent.getFrom();
+    Location to = playerMoveEvent.getTo();
+    // Looking around doesn't move the player, so it is left alone
+    if (to == null || (from.getX() == to.getX() && from.getY() == to.getY() && from.getZ() == to.getZ())) {
+      return;
+    }
+    PlayerContext context = Workshop.getInstance().getState().getPlayerContexts().get(playerMoveEvent.getPlayer());
+    if (!context.isStaff() && context.isRegistering()) {
+      Optional<Classroom> progressing = Workshop.getInstance().getState().getClassroomManager().getInSession();
+      if (!progressing.isPresent() || !progressing.get().isPublic()) {
         return;
       }
-      Optional<RegistrationForm> form = Workshop.getInstance()
-          .getState()
-          .getClassroomManager()
-          .getInSession().flatMap(classroom -> classroom.getRegistrationForm(playerMoveEvent.getPlayer().getUniqueId()));
+      Optional<RegistrationForm> form = progressing.get().getRegistrationForm(playerMoveEvent.getPlayer().getUniqueId());
       if (form.isPresent()) {
         playerMoveEvent.setCancelled(true);
-        Bukkit.getScheduler().runTask(Workshop.getInstance(), () -> notify(playerMoveEvent.getPlayer(), form.get()));
+        notify(playerMoveEvent.getPlayer(), form.get());
       }
     }
   }
 
-  @FeatureEventHandler
+  @FeatureEventHandler(onDemand = true)
   public void onPlayerInteract(PlayerInteractEvent playerInteractEvent) {
-    if (!playerInteractEvent.getPlayer().hasPermission(Permissions.STAFF)) {
-      if (Workshop.getInstance().getState().getClassroomManager().getInSession().map(classroom -> classroom.isRegistering(playerInteractEvent.getPlayer().getUniqueId())).orElse(false)) {
-        playerInteractEvent.setCancelled(true);
-      }
+    PlayerContext context = Workshop.getInstance().getState().getPlayerContexts().get(playerInteractEvent.getPlayer());
+    if (!context.isStaff() && context.isRegistering()) {
+      playerInteractEvent.setCancelled(true);
     }
   }
 
-  @FeatureEventHandler
+  @FeatureEventHandler(onDemand = true)
   public void onPlayerChat(AsyncPlayerChatEvent playerChatEvent) {
-    if (!playerChatEvent.getPlayer().hasPermission(Permissions.STAFF)) {
+    PlayerContext context = Workshop.getInstance().getState().getPlayerContexts().get(playerChatEvent.getPlayer());
+    if (!context.isStaff() && context.isRegistering()) {
       Optional<RegistrationForm> form = Workshop.getInstance()
           .getState()
           .getClassroomManager()
@@ -146,16 +183,20 @@ public class ClassroomListener extends FeatureListener {
         }
         form.get().input(message);
         playerChatEvent.setCancelled(true);
-        Bukkit.getScheduler().runTask(Workshop.getInstance(), () -> {
+        Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("classroom registration", () -> {
           if (form.get().isDone()) {
-            Optional<Classroom.Participant> participant = Workshop.getInstance().getState()
+            Classroom inSession = Workshop.getInstance().getState()
                 .getClassroomManager()
-                .getInSession().get()
+                .getInSession().get();
+            Optional<Classroom.Participant> participant = inSession
                 .completeRegistration(playerChatEvent.getPlayer().getUniqueId());
             if (!participant.isPresent()) {
               Workshop.getInstance().getLogger().warning("An error occurred trying to register " + playerChatEvent.getPlayer());
               return;
             }
+            Workshop.getInstance().getState().getClassroomManager().saveClassroom(inSession);
+            Workshop.getInstance().getState().getClassroomManager().refreshListeners();
+            Workshop.getInstance().getState().getPlayerContexts().refresh(playerChatEvent.getPlayer());
             unnotify(playerChatEvent.getPlayer());
             playerChatEvent.getPlayer().sendMessage(Format.success("Thank you for registering!"));
             Bukkit.getServer().broadcastMessage(Format.info(
@@ -171,29 +212,56 @@ public class ClassroomListener extends FeatureListener {
           } else {
             notify(playerChatEvent.getPlayer(), form.get());
           }
-        });
+        }));
       }
     }
   }
 
-  @FeatureEventHandler
+  @FeatureEventHandler(onDemand = true)
   public void onPlayerCommandPreprocess(PlayerCommandPreprocessEvent playerCommandEvent) {
-    if (!playerCommandEvent.getPlayer().hasPermission(Permissions.STAFF)) {
-      if (Workshop.getInstance().getState().getClassroomManager().getInSession().map(classroom -> classroom.isRegistering(playerCommandEvent.getPlayer().getUniqueId())).orElse(false)) {
-        playerCommandEvent.setCancelled(true);
-        playerCommandEvent.getPlayer().sendMessage(Format.error("You can't run commands when you are registering!"));
-      }
+    PlayerContext context = Workshop.getInstance().getState().getPlayerContexts().get(playerCommandEvent.getPlayer());
+    if (!context.isStaff() && context.isRegistering()) {
+      playerCommandEvent.setCancelled(true);
+      playerCommandEvent.getPlayer().sendMessage(Format.error("You can't run commands when you are registering!"));
     }
   }
 
+  @FeatureEventHandler
+  public void onSessionStart(ClassroomSessionStartEvent sessionStartEvent) {
+    Communication.sendStaffMessage(Format.info("The class "
+        + ChatColor.LIGHT_PURPLE + sessionStartEvent.getClassroom().getName()
+        + Format.INFO + " is now in session"));
+  }
+
+  @FeatureEventHandler
+  public void onSessionEnd(ClassroomSessionEndEvent sessionEndEvent) {
+    Classroom classroom = sessionEndEvent.getClassroom();
+    // Nobody can finish registering after the class is over
+    Bukkit.getOnlinePlayers().stream()
+        .filter(player -> classroom.isRegistering(player.getUniqueId()))
+        .forEach(this::unnotify);
+    Communication.sendStaffMessage(Format.info("The class "
+        + ChatColor.LIGHT_PURPLE + classroom.getName()
+        + Format.INFO + " is over"));
+  }
+
+  /**
+   * Freeze the player if they aren't already, and prompt them for the current stage of their form
+   * unless it was sent within the configured interval.
+   */
   private void notify(Player player, RegistrationForm form) {
-    player.setInvulnerable(true);
-    Location location = player.getLocation();
-    location.setPitch(-90);
-    player.teleport(location);
-    player.addPotionEffect(new PotionEffect(PotionEffectType.BLINDNESS, 10000, 10));
-    player.resetTitle();
-    player.sendTitle(Format.WARN + form.message(), "Press t to chat", 10, 10000, 0);
+    if (form.freeze()) {
+      player.setInvulnerable(true);
+      Location location = player.getLocation();
+      location.setPitch(-90);
+      player.teleport(location);
+      player.addPotionEffect(new PotionEffect(PotionEffectType.BLINDNESS, 10000, 10));
+    }
+    if (form.prompt(System.currentTimeMillis(),
+        TimeUnit.SECONDS.toMillis(Settings.REGISTRATION_PROMPT_INTERVAL.getValue()))) {
+      player.resetTitle();
+      player.sendTitle(Format.WARN + form.message(), "Press t to chat", 10, 10000, 0);
+    }
   }
 
   private void unnotify(Player player) {
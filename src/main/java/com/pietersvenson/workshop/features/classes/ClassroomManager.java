@@ -25,27 +25,51 @@
 
 package com.pietersvenson.workshop.features.classes;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.features.FeatureListener;
 import com.pietersvenson.workshop.features.FeatureManager;
-import com.pietersvenson.workshop.state.Stateful;
+import com.pietersvenson.workshop.state.BinaryStateful;
+import com.pietersvenson.workshop.state.SqlStateful;
+import com.pietersvenson.workshop.state.StateInput;
+import com.pietersvenson.workshop.state.StateOutput;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.time.Duration;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
-public class ClassroomManager extends FeatureManager implements Stateful {
+public class ClassroomManager extends FeatureManager implements SqlStateful, BinaryStateful {
 
   private Map<String, Classroom> classrooms = Maps.newHashMap();
+  // Rebuilt on demand after any classroom changes
+  private volatile ClassroomTimeline timeline;
+  private final SessionTracker sessions = new SessionTracker(this);
+  // Which classrooms each player is a participant of, read from any thread
+  private volatile Map<UUID, Set<String>> registrations = Maps.newConcurrentMap();
+  // Which players each classroom was last indexed with, only used on the main thread
+  private final Map<String, Set<UUID>> indexed = Maps.newHashMap();
 
   /**
    * Add a classroom to the global list.
@@ -55,10 +79,27 @@ public class ClassroomManager extends FeatureManager implements Stateful {
    */
   public Classroom addClassroom(@Nonnull Classroom classroom) {
     Classroom out = classrooms.put(classroom.getId(), classroom);
-    Workshop.getInstance().saveStateSynchronous();
+    saveClassroom(classroom);
     return out;
   }
 
+  /**
+   * Record the current state of a classroom after it was modified.
+   * This must be called after every change to a classroom that should persist.
+   *
+   * @param classroom the modified classroom
+   */
+  public void saveClassroom(@Nonnull Classroom classroom) {
+    invalidate();
+    index(classroom.getId(), classroom);
+    // The snapshot is encoded off of the main thread when the record is written
+    Map.Entry<String, Map<String, Object>> serialized = classroom.serialize();
+    Workshop.getInstance().getState().record(this, "put", () -> new String[] {
+        serialized.getKey(),
+        new Yaml().dump(serialized.getValue())
+    });
+  }
+
   public Optional<Classroom> getClassroom(@Nonnull String id) {
     return Optional.ofNullable(classrooms.get(id));
   }
@@ -71,7 +112,9 @@ public class ClassroomManager extends FeatureManager implements Stateful {
    */
   public Classroom removeClassroom(@Nonnull String string) {
     Classroom out = classrooms.remove(string);
-    Workshop.getInstance().saveStateSynchronous();
+    invalidate();
+    index(string, null);
+    Workshop.getInstance().getState().record(this, "remove", string);
     return out;
   }
 
@@ -79,13 +122,135 @@ public class ClassroomManager extends FeatureManager implements Stateful {
     return Lists.newLinkedList(classrooms.keySet());
   }
 
+  /**
+   * Get the ids of every classroom which a player is a participant of.
+   * This may be called from any thread.
+   *
+   * @param player the uuid of the player
+   * @return the ids of the classrooms
+   */
+  @Nonnull
+  public Set<String> getRegisteredClassroomIds(@Nonnull UUID player) {
+    return registrations.getOrDefault(player, Collections.emptySet());
+  }
+
+  /**
+   * Update the index of the players in a classroom.
+   *
+   * @param id        the id of the classroom
+   * @param classroom the classroom, or null if it was removed
+   */
+  private void index(@Nonnull String id, @Nullable Classroom classroom) {
+    Set<UUID> previous = Optional.ofNullable(indexed.remove(id)).orElse(Collections.emptySet());
+    Set<UUID> current = classroom == null
+        ? Collections.emptySet()
+        : classroom.getParticipants().stream().map(Classroom.Participant::getPlayerUuid).collect(Collectors.toSet());
+    for (UUID player : Sets.difference(previous, current)) {
+      registrations.computeIfPresent(player, (uuid, ids) -> {
+        Set<String> remaining = ImmutableSet.copyOf(Sets.difference(ids, Collections.singleton(id)));
+        return remaining.isEmpty() ? null : remaining;
+      });
+    }
+    for (UUID player : Sets.difference(current, previous)) {
+      registrations.merge(player, ImmutableSet.of(id), (ids, added) -> ImmutableSet.copyOf(Sets.union(ids, added)));
+    }
+    if (classroom != null) {
+      indexed.put(id, current);
+    }
+  }
+
+  /**
+   * Index every classroom again, and swap the new index in whole.
+   */
+  private void reindex() {
+    Map<UUID, Set<String>> rebuilt = Maps.newConcurrentMap();
+    indexed.clear();
+    classrooms.values().forEach(classroom -> {
+      Set<UUID> players = classroom.getParticipants().stream()
+          .map(Classroom.Participant::getPlayerUuid)
+          .collect(Collectors.toSet());
+      players.forEach(player -> rebuilt.merge(player,
+          ImmutableSet.of(classroom.getId()),
+          (ids, added) -> ImmutableSet.copyOf(Sets.union(ids, added))));
+      indexed.put(classroom.getId(), players);
+    });
+    registrations = rebuilt;
+  }
+
   public boolean hasAny() {
     return !classrooms.isEmpty();
   }
 
+  /**
+   * Get the classroom which is in session. This is updated at every appointment boundary
+   * and on the tick after any classroom changes.
+   *
+   * @return the classroom
+   */
   @Nonnull
   public Optional<Classroom> getInSession() {
-    return classrooms.values().stream().filter(Classroom::inSession).findFirst();
+    return sessions.getCurrent().map(classrooms::get);
+  }
+
+  /**
+   * Get the players registered for a classroom, if it's in session or about to be.
+   * The list is built ahead of the session and may be read from any thread.
+   *
+   * @param classroomId the id of the classroom
+   * @return the uuids of the players, or empty if the classroom wasn't prepared
+   */
+  @Nonnull
+  public Optional<Set<UUID>> getAllowlist(@Nonnull String classroomId) {
+    return sessions.getAllowlist(classroomId);
+  }
+
+  /**
+   * Check whether a player who isn't staff may log in, against a snapshot of the classroom in session.
+   * The snapshot is rebuilt on the tick after any classroom changes. This may be called from any thread.
+   *
+   * @param player the uuid of the player
+   * @return the reason they are turned away, or empty if they are admitted
+   */
+  @Nonnull
+  public Optional<String> checkAdmission(@Nonnull UUID player) {
+    return sessions.getAdmission().check(player);
+  }
+
+  private void invalidate() {
+    timeline = null;
+    sessions.scheduleRefresh();
+  }
+
+  /**
+   * Get the index of the appointments of every classroom.
+   *
+   * @return the timeline
+   */
+  @Nonnull
+  public ClassroomTimeline getTimeline() {
+    ClassroomTimeline out = timeline;
+    if (out == null) {
+      out = ClassroomTimeline.build(classrooms.values());
+      timeline = out;
+    }
+    return out;
+  }
+
+  /**
+   * Find every appointment of any classroom which overlaps with a schedule.
+   *
+   * @param schedule the schedule
+   * @return the overlapping appointments
+   */
+  @Nonnull
+  public List<ClassroomTimeline.Entry> getConflicts(@Nonnull Schedule schedule) {
+    ClassroomTimeline current = getTimeline();
+    List<ClassroomTimeline.Entry> out = Lists.newArrayList();
+    schedule.forEach((start, end) -> {
+      out.addAll(current.getBetween(start, end));
+      return true;
+    });
+    return out;
   }
 
   public boolean repeat(@Nonnull String name,
@@ -100,7 +265,7 @@ public class ClassroomManager extends FeatureManager implements Stateful {
       return false;
     }
     classroom.setSchedule(schedule.repeat(duration, count));
-    Workshop.getInstance().saveStateSynchronous();
+    saveClassroom(classroom);
     return true;
   }
 
@@ -124,7 +289,7 @@ public class ClassroomManager extends FeatureManager implements Stateful {
       }
     }
     classroom.setSchedule(schedule.repeatComponent(duration, count, indexToRepeat));
-    Workshop.getInstance().saveStateSynchronous();
+    saveClassroom(classroom);
     return true;
   }
 
@@ -141,29 +306,184 @@ public class ClassroomManager extends FeatureManager implements Stateful {
   @Nonnull
   @Override
   public String dumpState() {
-    Map<String, Map<String, Object>> serialized = Maps.newTreeMap();
-    classrooms.values().forEach(classroom -> serialized.put(classroom.serialize().getKey(), classroom.serialize().getValue()));
+    return snapshotState().get();
+  }
+
+  /**
+   * Capture the state from the cached encoding of each classroom.
+   * Only the classrooms which changed since they were last encoded are encoded again,
+   * in parallel, and the file is assembled from the fragments in order of id.
+   */
+  @Nonnull
+  @Override
+  public Supplier<String> snapshotState() {
+    List<Classroom> sorted = Lists.newArrayList(classrooms.values());
+    sorted.sort(Comparator.comparing(Classroom::getId));
+    List<Supplier<String>> fragments = Lists.newArrayListWithCapacity(sorted.size());
+    List<Runnable> encodings = Lists.newArrayList();
+    for (Classroom classroom : sorted) {
+      Optional<String> cached = classroom.getCachedFragment();
+      if (cached.isPresent()) {
+        fragments.add(cached::get);
+        continue;
+      }
+      long version = classroom.getVersion();
+      Map.Entry<String, Map<String, Object>> serialized = classroom.serialize();
+      String[] encoded = new String[1];
+      encodings.add(() -> {
+        encoded[0] = encodeFragment(serialized);
+        classroom.cacheFragment(version, encoded[0]);
+      });
+      fragments.add(() -> encoded[0]);
+    }
+    return () -> {
+      encodings.parallelStream().forEach(Runnable::run);
+      if (fragments.isEmpty()) {
+        return "{}\n";
+      }
+      StringBuilder out = new StringBuilder();
+      fragments.forEach(fragment -> out.append(fragment.get()));
+      return out.toString();
+    };
+  }
+
+  /**
+   * Encode a classroom as a single entry of the classrooms file,
+   * so that the entries can be concatenated into a whole file.
+   */
+  private static String encodeFragment(@Nonnull Map.Entry<String, Map<String, Object>> serialized) {
     DumperOptions dumperOptions = new DumperOptions();
     dumperOptions.setIndent(2);
     dumperOptions.setPrettyFlow(true);
-    return new Yaml(dumperOptions).dump(serialized);
+    return new Yaml(dumperOptions).dump(Collections.singletonMap(serialized.getKey(), serialized.getValue()));
   }
 
   @Override
   public void loadState(String state) throws Exception {
-    Map<String, Map<String, Object>> toAdd = Maps.newTreeMap();
-    try {
-      toAdd.putAll(new Yaml().<Map<String, Map<String, Object>>>load(state));
-    } catch (Exception e) {
-      throw new YAMLException(e);
+    parseState(state).install();
+  }
+
+  @Nonnull
+  @Override
+  public Installer parseState(String state) throws Exception {
+    return parseState(new StringReader(state));
+  }
+
+  @Nonnull
+  @Override
+  public Installer parseState(@Nonnull Reader reader) throws YAMLException {
+    Map<String, Classroom> parsed = ClassroomYamlReader.readAll(reader, (id, e) ->
+        Workshop.getInstance().getLogger().severe("The classroom " + id
+            + " could not be loaded and has been skipped: " + e.getMessage()));
+    return () -> install(parsed);
+  }
+
+  /**
+   * Swap in loaded classrooms, keeping the current instance of every classroom which didn't change
+   * so that registrations in progress survive a reload.
+   *
+   * @param parsed the loaded classrooms
+   */
+  private void install(@Nonnull Map<String, Classroom> parsed) {
+    parsed.replaceAll((id, classroom) -> Optional.ofNullable(classrooms.get(id))
+        .filter(current -> current.serialize().getValue().equals(classroom.serialize().getValue()))
+        .orElse(classroom));
+    classrooms = parsed;
+    invalidate();
+    reindex();
+  }
+
+  @Override
+  public int getBinaryVersion() {
+    return 2;
+  }
+
+  @Nonnull
+  @Override
+  public StateOutput.Encoder snapshotBinaryState() {
+    List<StateOutput.Encoder> captured = classrooms.values().stream()
+        .map(Classroom::snapshotBinary)
+        .collect(Collectors.toList());
+    return out -> {
+      out.writeInt(captured.size());
+      for (StateOutput.Encoder classroom : captured) {
+        classroom.write(out);
+      }
+    };
+  }
+
+  @Nonnull
+  @Override
+  public Installer readState(@Nonnull StateInput in, int version) throws IOException {
+    int count = in.readInt();
+    Map<String, Classroom> parsed = Maps.newHashMapWithExpectedSize(count);
+    for (int i = 0; i < count; i++) {
+      Classroom classroom = Classroom.read(in, version);
+      parsed.put(classroom.getId(), classroom);
     }
-    classrooms.clear();
-    for (Map.Entry<String, Map<String, Object>> entry : toAdd.entrySet()) {
-      Classroom deserialized = Classroom.deserialize(entry.getKey(), entry.getValue());
-      classrooms.put(deserialized.getId(), deserialized);
+    return () -> install(parsed);
+  }
+
+  @Override
+  public void replay(@Nonnull String operation, @Nonnull List<String> arguments) throws Exception {
+    invalidate();
+    switch (operation) {
+      case "put":
+        Classroom deserialized = ClassroomYamlReader.readOne(arguments.get(0), new StringReader(arguments.get(1)));
+        classrooms.put(deserialized.getId(), deserialized);
+        index(deserialized.getId(), deserialized);
+        break;
+      case "remove":
+        classrooms.remove(arguments.get(0));
+        index(arguments.get(0), null);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown classroom operation: " + operation);
+    }
+  }
+
+  @Override
+  public void createTables(@Nonnull Connection connection) throws SQLException {
+    ClassroomTables.create(connection);
+  }
+
+  @Override
+  public void applyToTables(@Nonnull Connection connection,
+                            @Nonnull String operation,
+                            @Nonnull List<String> arguments) throws SQLException {
+    switch (operation) {
+      case "put":
+        ClassroomTables.put(connection, arguments.get(0), new Yaml().<Map<String, Object>>load(arguments.get(1)));
+        break;
+      case "remove":
+        ClassroomTables.remove(connection, arguments.get(0));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown classroom operation: " + operation);
     }
   }
 
+  @Nonnull
+  @Override
+  public TableWriter snapshotTables() {
+    List<Map.Entry<String, Map<String, Object>>> serialized = classrooms.values().stream()
+        .map(Classroom::serialize)
+        .collect(Collectors.toList());
+    return connection -> {
+      ClassroomTables.clear(connection);
+      for (Map.Entry<String, Map<String, Object>> entry : serialized) {
+        ClassroomTables.put(connection, entry.getKey(), entry.getValue());
+      }
+    };
+  }
+
+  @Nonnull
+  @Override
+  public Installer readTables(@Nonnull Connection connection) throws SQLException {
+    Map<String, Classroom> parsed = ClassroomTables.readAll(connection);
+    return () -> install(parsed);
+  }
+
   @Nonnull
   @Override
   protected Collection<FeatureListener> getListeners() {
@@ -53,11 +53,7 @@ public class ClassroomNicknameListener extends FeatureListener {
       // Ensure they are allowed in the server
       if (Workshop.getInstance().getState().getClassroomManager().hasAny()) {
         Optional<Classroom.Participant> participant = progressing
-            .flatMap(room -> room.getParticipants()
-                .stream()
-                .filter(part -> part.getPlayerUuid()
-                    .equals(player.getUniqueId()))
-                .findFirst());
+            .flatMap(room -> room.getParticipant(player.getUniqueId()));
 
         if (!participant.isPresent()) {
           return;
@@ -68,7 +64,7 @@ public class ClassroomNicknameListener extends FeatureListener {
               .getState()
               .getNicknameManager()
               .setNickname(participant.get().getPlayerUuid(),
-                  Format.participantDisplayName(participant.get()));
+                  participant.get().getDisplayName());
         } catch (UnsupportedOperationException e) {
           Bukkit.getServer().broadcastMessage(Format.info(player.getName() + " is "
               + ChatColor.GREEN + participant.get().getFirstName() + " "
@@ -0,0 +1,268 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.features.classes;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+import com.pietersvenson.workshop.util.Format;
+
+import javax.annotation.Nonnull;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Maps classrooms to the classrooms, participants, appointments and recurrences tables of an SQL storage backend.
+ * Repeating appointments are stored as one row of their rule, with the cancelled occurrences as a comma separated list.
+ * Classrooms are written from the form produced by {@link Classroom#serialize()},
+ * which is also the form they are journaled in.
+ */
+final class ClassroomTables {
+
+  private ClassroomTables() {
+  }
+
+  static void create(@Nonnull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE IF NOT EXISTS classrooms ("
+          + "id TEXT PRIMARY KEY, "
+          + "name TEXT NOT NULL, "
+          + "curriculum TEXT NOT NULL)");
+      statement.execute("CREATE TABLE IF NOT EXISTS participants ("
+          + "classroom_id TEXT NOT NULL, "
+          + "position INTEGER NOT NULL, "
+          + "uuid TEXT NOT NULL, "
+          + "first_name TEXT NOT NULL, "
+          + "last_name TEXT NOT NULL, "
+          + "PRIMARY KEY (classroom_id, position))");
+      statement.execute("CREATE INDEX IF NOT EXISTS participants_by_uuid ON participants (uuid)");
+      statement.execute("CREATE TABLE IF NOT EXISTS appointments ("
+          + "classroom_id TEXT NOT NULL, "
+          + "start_millis INTEGER NOT NULL, "
+          + "end_millis INTEGER NOT NULL, "
+          + "PRIMARY KEY (classroom_id, start_millis))");
+      statement.execute("CREATE TABLE IF NOT EXISTS recurrences ("
+          + "classroom_id TEXT NOT NULL, "
+          + "start_millis INTEGER NOT NULL, "
+          + "end_millis INTEGER NOT NULL, "
+          + "period_millis INTEGER NOT NULL, "
+          + "count INTEGER NOT NULL, "
+          + "cancelled TEXT NOT NULL, "
+          + "PRIMARY KEY (classroom_id, start_millis))");
+    }
+  }
+
+  /**
+   * Insert or replace a classroom and all of its participants and appointments.
+   *
+   * @param connection the connection
+   * @param id         the id of the classroom
+   * @param data       the classroom, as serialized by {@link Classroom#serialize()}
+   * @throws SQLException if it couldn't be written
+   */
+  @SuppressWarnings("unchecked")
+  static void put(@Nonnull Connection connection,
+                  @Nonnull String id,
+                  @Nonnull Map<String, Object> data) throws SQLException {
+    remove(connection, id);
+    try (PreparedStatement statement = connection.prepareStatement(
+        "INSERT INTO classrooms (id, name, curriculum) VALUES (?, ?, ?)")) {
+      statement.setString(1, id);
+      statement.setString(2, Optional.ofNullable((String) data.get("name")).orElse(id));
+      statement.setString(3, Optional.ofNullable((String) data.get("curriculum")).orElse(Curriculum.NONE.name()));
+      statement.executeUpdate();
+    }
+    List<Map<String, String>> participants = Optional.ofNullable((List<Map<String, String>>) data.get("participants"))
+        .orElse(Lists.newArrayList());
+    try (PreparedStatement statement = connection.prepareStatement(
+        "INSERT INTO participants (classroom_id, position, uuid, first_name, last_name) VALUES (?, ?, ?, ?, ?)")) {
+      int position = 0;
+      for (Map<String, String> participant : participants) {
+        statement.setString(1, id);
+        statement.setInt(2, position++);
+        statement.setString(3, participant.get("mc_uuid"));
+        statement.setString(4, participant.get("first_name"));
+        statement.setString(5, participant.get("last_name"));
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    }
+    List<Map<String, Object>> schedule = Optional.ofNullable((List<Map<String, Object>>) data.get("schedule"))
+        .orElse(Lists.newArrayList());
+    try (PreparedStatement appointments = connection.prepareStatement(
+        "INSERT INTO appointments (classroom_id, start_millis, end_millis) VALUES (?, ?, ?)");
+         PreparedStatement recurrences = connection.prepareStatement(
+             "INSERT INTO recurrences (classroom_id, start_millis, end_millis, period_millis, count, cancelled) "
+                 + "VALUES (?, ?, ?, ?, ?, ?)")) {
+      for (Map<String, Object> appointment : schedule) {
+        if (appointment.containsKey("every")) {
+          Recurrence rule = parseRule(appointment);
+          recurrences.setString(1, id);
+          recurrences.setLong(2, rule.getFirst());
+          recurrences.setLong(3, rule.getFirst() + rule.getDuration());
+          recurrences.setLong(4, rule.getPeriod());
+          recurrences.setInt(5, rule.getCount());
+          recurrences.setString(6, Ints.join(",", rule.getExcluded()));
+          recurrences.addBatch();
+        } else {
+          appointments.setString(1, id);
+          appointments.setLong(2, parseMillis((String) appointment.get("start")));
+          appointments.setLong(3, parseMillis((String) appointment.get("end")));
+          appointments.addBatch();
+        }
+      }
+      appointments.executeBatch();
+      recurrences.executeBatch();
+    }
+  }
+
+  private static Recurrence parseRule(Map<String, Object> data) throws SQLException {
+    try {
+      return Recurrence.deserialize(data);
+    } catch (ParseException | IllegalArgumentException e) {
+      throw new SQLException("Invalid repeating appointment: " + data, e);
+    }
+  }
+
+  private static long parseMillis(String formatted) throws SQLException {
+    try {
+      return Format.parseInstantVerbose(formatted).toEpochMilli();
+    } catch (ParseException | NullPointerException e) {
+      throw new SQLException("Invalid appointment time: " + formatted, e);
+    }
+  }
+
+  static void remove(@Nonnull Connection connection, @Nonnull String id) throws SQLException {
+    for (String table : new String[]{"participants", "appointments", "recurrences"}) {
+      try (PreparedStatement statement = connection.prepareStatement(
+          "DELETE FROM " + table + " WHERE classroom_id = ?")) {
+        statement.setString(1, id);
+        statement.executeUpdate();
+      }
+    }
+    try (PreparedStatement statement = connection.prepareStatement("DELETE FROM classrooms WHERE id = ?")) {
+      statement.setString(1, id);
+      statement.executeUpdate();
+    }
+  }
+
+  static void clear(@Nonnull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.executeUpdate("DELETE FROM participants");
+      statement.executeUpdate("DELETE FROM appointments");
+      statement.executeUpdate("DELETE FROM recurrences");
+      statement.executeUpdate("DELETE FROM classrooms");
+    }
+  }
+
+  /**
+   * Read every classroom.
+   *
+   * @param connection the connection
+   * @return the classrooms, keyed by id
+   * @throws SQLException if they couldn't be read
+   */
+  @Nonnull
+  static Map<String, Classroom> readAll(@Nonnull Connection connection) throws SQLException {
+    Map<String, Classroom> out = Maps.newHashMap();
+    try (Statement statement = connection.createStatement()) {
+      try (ResultSet result = statement.executeQuery("SELECT id, name, curriculum FROM classrooms")) {
+        while (result.next()) {
+          Classroom classroom = new Classroom(result.getString("id"));
+          classroom.setName(result.getString("name"));
+          try {
+            classroom.setCurriculum(Curriculum.valueOf(result.getString("curriculum")));
+          } catch (IllegalArgumentException e) {
+            classroom.setCurriculum(Curriculum.NONE);
+          }
+          out.put(classroom.getId(), classroom);
+        }
+      }
+      try (ResultSet result = statement.executeQuery(
+          "SELECT classroom_id, uuid, first_name, last_name FROM participants ORDER BY classroom_id, position")) {
+        while (result.next()) {
+          Classroom classroom = out.get(result.getString("classroom_id"));
+          if (classroom != null) {
+            classroom.addParticipant(new Classroom.Participant(
+                result.getString("first_name"),
+                result.getString("last_name"),
+                UUID.fromString(result.getString("uuid"))));
+          }
+        }
+      }
+      Map<String, Schedule.Builder> schedules = Maps.newHashMap();
+      try (ResultSet result = statement.executeQuery(
+          "SELECT classroom_id, start_millis, end_millis FROM appointments")) {
+        while (result.next()) {
+          schedules.computeIfAbsent(result.getString("classroom_id"), id -> Schedule.builder())
+              .add(result.getLong("start_millis"), result.getLong("end_millis"));
+        }
+      }
+      try (ResultSet result = statement.executeQuery(
+          "SELECT classroom_id, start_millis, end_millis, period_millis, count, cancelled FROM recurrences")) {
+        while (result.next()) {
+          String cancelled = result.getString("cancelled");
+          long start = result.getLong("start_millis");
+          Recurrence rule;
+          try {
+            rule = new Recurrence(start,
+                result.getLong("end_millis") - start,
+                result.getLong("period_millis"),
+                result.getInt("count"),
+                cancelled.isEmpty() ? new int[0] : Ints.toArray(Splitter.on(',').splitToList(cancelled).stream()
+                    .map(Integer::valueOf)
+                    .collect(Collectors.toList())));
+          } catch (IllegalArgumentException e) {
+            throw new SQLException("Invalid repeating appointment stored for the classroom "
+                + result.getString("classroom_id"), e);
+          }
+          schedules.computeIfAbsent(result.getString("classroom_id"), id -> Schedule.builder()).add(rule);
+        }
+      }
+      for (Map.Entry<String, Schedule.Builder> schedule : schedules.entrySet()) {
+        Classroom classroom = out.get(schedule.getKey());
+        if (classroom != null) {
+          try {
+            classroom.setSchedule(schedule.getValue().build());
+          } catch (Schedule.OverlappingAppointmentException e) {
+            throw new SQLException("Overlapping appointments are stored for the classroom " + classroom.getId(), e);
+          }
+        }
+      }
+    }
+    return out;
+  }
+
+}
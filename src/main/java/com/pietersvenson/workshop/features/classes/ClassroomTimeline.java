@@ -0,0 +1,306 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.features.classes;
+
+import com.google.common.collect.Lists;
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An index of the appointments of every classroom, sorted by start time.
+ * A segment tree over the sorted single appointments holds the latest end time in each range,
+ * so finding the appointments which overlap a window only visits the ranges which can contain them.
+ * Repeating appointments stay as their {@link Recurrence} rules, whose occurrences are computed
+ * for each query, so rebuilding doesn't depend on how many times they repeat.
+ * The timeline is immutable and is rebuilt when a classroom changes.
+ */
+public final class ClassroomTimeline {
+
+  private final int size;
+  private final long[] starts;
+  private final long[] ends;
+  private final String[] ids;
+  private final int leaves;
+  private final long[] maxEnds;
+  private final Recurrence[] rules;
+  private final String[] ruleIds;
+
+  private ClassroomTimeline(long[] starts, long[] ends, String[] ids, Recurrence[] rules, String[] ruleIds) {
+    this.size = starts.length;
+    this.starts = starts;
+    this.ends = ends;
+    this.ids = ids;
+    this.rules = rules;
+    this.ruleIds = ruleIds;
+    this.leaves = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+    this.maxEnds = new long[leaves * 2];
+    Arrays.fill(maxEnds, Long.MIN_VALUE);
+    System.arraycopy(ends, 0, maxEnds, leaves, size);
+    for (int node = leaves - 1; node > 0; node--) {
+      maxEnds[node] = Math.max(maxEnds[node * 2], maxEnds[node * 2 + 1]);
+    }
+  }
+
+  /**
+   * Index the appointments of some classrooms.
+   *
+   * @param classrooms the classrooms
+   * @return the timeline
+   */
+  @Nonnull
+  static ClassroomTimeline build(@Nonnull Collection<Classroom> classrooms) {
+    List<Entry> entries = Lists.newArrayList();
+    List<Recurrence> rules = Lists.newArrayList();
+    List<String> ruleIds = Lists.newArrayList();
+    for (Classroom classroom : classrooms) {
+      classroom.getSchedule().forEachSingle((start, end) -> {
+        entries.add(new Entry(classroom.getId(), start, end));
+        return true;
+      });
+      for (Recurrence rule : classroom.getSchedule().getRules()) {
+        rules.add(rule);
+        ruleIds.add(classroom.getId());
+      }
+    }
+    entries.sort(Comparator.comparingLong(entry -> entry.start));
+    long[] starts = new long[entries.size()];
+    long[] ends = new long[entries.size()];
+    String[] ids = new String[entries.size()];
+    for (int i = 0; i < entries.size(); i++) {
+      starts[i] = entries.get(i).start;
+      ends[i] = entries.get(i).end;
+      ids[i] = entries.get(i).classroomId;
+    }
+    return new ClassroomTimeline(starts, ends, ids,
+        rules.toArray(new Recurrence[0]),
+        ruleIds.toArray(new String[0]));
+  }
+
+  /**
+   * Find the first appointment which starts after a time.
+   */
+  private int upperBound(long time) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (starts[mid] <= time) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Find the earliest starting appointment which includes a time.
+   *
+   * @param time the time in epoch millis
+   * @return the appointment
+   */
+  @Nonnull
+  public Optional<Entry> getAt(long time) {
+    int index = firstEndingAfter(1, 0, leaves, upperBound(time), time);
+    Entry out = index < 0 ? null : new Entry(ids[index], starts[index], ends[index]);
+    for (int r = 0; r < rules.length; r++) {
+      int occurrence = rules[r].occurrenceAt(time);
+      if (occurrence >= 0 && (out == null || rules[r].startOf(occurrence) < out.start)) {
+        out = new Entry(ruleIds[r], rules[r].startOf(occurrence), rules[r].endOf(occurrence));
+      }
+    }
+    return Optional.ofNullable(out);
+  }
+
+  private int firstEndingAfter(int node, int low, int high, int limit, long time) {
+    if (low >= limit || maxEnds[node] < time) {
+      return -1;
+    }
+    if (high - low == 1) {
+      return low;
+    }
+    int mid = (low + high) >>> 1;
+    int left = firstEndingAfter(node * 2, low, mid, limit, time);
+    return left >= 0 ? left : firstEndingAfter(node * 2 + 1, mid, high, limit, time);
+  }
+
+  /**
+   * Find every appointment which overlaps a window, including its bounds.
+   *
+   * @param from the start of the window in epoch millis
+   * @param to   the end of the window in epoch millis
+   * @return the appointments, in order of start time
+   */
+  @Nonnull
+  public List<Entry> getBetween(long from, long to) {
+    List<Entry> out = Lists.newArrayList();
+    collectEndingAfter(1, 0, leaves, upperBound(to), from, out);
+    if (rules.length == 0) {
+      return out;
+    }
+    for (int r = 0; r < rules.length; r++) {
+      String id = ruleIds[r];
+      rules[r].forEachBetween(from, to, (start, end) -> {
+        out.add(new Entry(id, start, end));
+        return true;
+      });
+    }
+    out.sort(Comparator.comparingLong(entry -> entry.start));
+    return out;
+  }
+
+  private void collectEndingAfter(int node, int low, int high, int limit, long time, List<Entry> out) {
+    if (low >= limit || maxEnds[node] < time) {
+      return;
+    }
+    if (high - low == 1) {
+      out.add(new Entry(ids[low], starts[low], ends[low]));
+      return;
+    }
+    int mid = (low + high) >>> 1;
+    collectEndingAfter(node * 2, low, mid, limit, time, out);
+    collectEndingAfter(node * 2 + 1, mid, high, limit, time, out);
+  }
+
+  /**
+   * Find the next appointment to start after a time.
+   *
+   * @param time the time in epoch millis
+   * @return the appointment
+   */
+  @Nonnull
+  public Optional<Entry> getNext(long time) {
+    int index = upperBound(time);
+    Entry out = index == size ? null : new Entry(ids[index], starts[index], ends[index]);
+    for (int r = 0; r < rules.length; r++) {
+      int occurrence = rules[r].nextAfter(time);
+      if (occurrence >= 0 && (out == null || rules[r].startOf(occurrence) < out.start)) {
+        out = new Entry(ruleIds[r], rules[r].startOf(occurrence), rules[r].endOf(occurrence));
+      }
+    }
+    return Optional.ofNullable(out);
+  }
+
+  /**
+   * Find every pair of appointments of different classrooms which overlap, in a single sweep.
+   * The occurrences of the rules are merged into the sweep as it goes rather than collected first.
+   *
+   * @return the conflicts, in order of the start of the later appointment
+   */
+  @Nonnull
+  public List<Conflict> getConflicts() {
+    List<Conflict> out = Lists.newArrayList();
+    List<Entry> active = Lists.newLinkedList();
+    int nextSingle = 0;
+    int[] nextOccurrences = new int[rules.length];
+    for (int r = 0; r < rules.length; r++) {
+      nextOccurrences[r] = rules[r].nextIncluded(0);
+    }
+    while (true) {
+      int rule = nextSingle < size ? -1 : -2;
+      long start = nextSingle < size ? starts[nextSingle] : Long.MAX_VALUE;
+      for (int r = 0; r < rules.length; r++) {
+        if (nextOccurrences[r] >= 0 && rules[r].startOf(nextOccurrences[r]) < start) {
+          rule = r;
+          start = rules[r].startOf(nextOccurrences[r]);
+        }
+      }
+      Entry current;
+      if (rule == -2) {
+        return out;
+      } else if (rule == -1) {
+        current = new Entry(ids[nextSingle], starts[nextSingle], ends[nextSingle]);
+        nextSingle++;
+      } else {
+        int occurrence = nextOccurrences[rule];
+        current = new Entry(ruleIds[rule], start, rules[rule].endOf(occurrence));
+        nextOccurrences[rule] = rules[rule].nextIncluded(occurrence + 1);
+      }
+      Iterator<Entry> iterator = active.iterator();
+      while (iterator.hasNext()) {
+        Entry other = iterator.next();
+        if (other.end < current.start) {
+          iterator.remove();
+        } else if (!other.classroomId.equals(current.classroomId)) {
+          out.add(new Conflict(other, current));
+        }
+      }
+      active.add(current);
+    }
+  }
+
+  /**
+   * An appointment of a classroom.
+   */
+  public static final class Entry {
+
+    @Getter
+    private final String classroomId;
+    private final long start;
+    private final long end;
+
+    private Entry(@Nonnull String classroomId, long start, long end) {
+      this.classroomId = classroomId;
+      this.start = start;
+      this.end = end;
+    }
+
+    public Instant getStart() {
+      return Instant.ofEpochMilli(start);
+    }
+
+    public Instant getEnd() {
+      return Instant.ofEpochMilli(end);
+    }
+
+  }
+
+  /**
+   * Two appointments of different classrooms which overlap.
+   */
+  public static final class Conflict {
+
+    @Getter
+    private final Entry first;
+    @Getter
+    private final Entry second;
+
+    private Conflict(@Nonnull Entry first, @Nonnull Entry second) {
+      this.first = first;
+      this.second = second;
+    }
+
+  }
+
+}
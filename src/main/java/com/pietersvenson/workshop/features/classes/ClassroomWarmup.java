@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.features.classes;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.pietersvenson.workshop.Workshop;
+import com.pietersvenson.workshop.config.Settings;
+import com.pietersvenson.workshop.util.Timings;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Prepares for appointments shortly before they start, so that students joining at the start
+ * cost little on the main thread. Usernames are looked up and display names worked out ahead of time,
+ * the chunks around the spawn are loaded a few per tick and kept loaded through the session,
+ * and the allowlists of the classrooms are built.
+ */
+final class ClassroomWarmup {
+
+  private static final int CHUNK_RADIUS = 2;
+  private static final int CHUNKS_PER_TICK = 2;
+
+  private final ClassroomManager manager;
+  // The appointments which were already prepared, by classroom id and start
+  private final Map<String, Long> prepared = Maps.newHashMap();
+  private volatile Map<String, Set<UUID>> allowlists = Collections.emptyMap();
+  private World ticketWorld;
+  private long ticketCenter;
+  private final List<int[]> tickets = Lists.newArrayList();
+  private BukkitTask loading;
+
+  ClassroomWarmup(@Nonnull ClassroomManager manager) {
+    this.manager = manager;
+  }
+
+  /**
+   * Prepare for the appointments in session or about to start, and let go of anything prepared for others.
+   * Only the allowlists are built again for appointments which were already prepared,
+   * because the participants may have changed. This must be called from the main thread.
+   *
+   * @param appointments the appointments
+   */
+  void prepare(@Nonnull Collection<ClassroomTimeline.Entry> appointments) {
+    if (appointments.isEmpty()) {
+      release();
+      return;
+    }
+    Map<String, Set<UUID>> lists = Maps.newHashMap();
+    Map<String, Long> current = Maps.newHashMap();
+    for (ClassroomTimeline.Entry appointment : appointments) {
+      Optional<Classroom> classroom = manager.getClassroom(appointment.getClassroomId());
+      if (!classroom.isPresent()) {
+        continue;
+      }
+      ImmutableSet.Builder<UUID> players = ImmutableSet.builder();
+      classroom.get().getParticipants().forEach(participant -> players.add(participant.getPlayerUuid()));
+      lists.put(classroom.get().getId(), players.build());
+
+      long start = appointment.getStart().toEpochMilli();
+      current.put(classroom.get().getId(), start);
+      if (!Objects.equals(prepared.get(classroom.get().getId()), start)) {
+        for (Classroom.Participant participant : classroom.get().getParticipants()) {
+          participant.resolveUsername();
+          participant.getDisplayName();
+        }
+      }
+    }
+    prepared.clear();
+    prepared.putAll(current);
+    allowlists = ImmutableMap.copyOf(lists);
+    if (Settings.ENABLE_SPAWN.getValue()) {
+      Workshop.getInstance().getState().getSpawnManager().getSpawn().ifPresent(this::loadChunks);
+    }
+  }
+
+  /**
+   * Load the chunks around a location over the next few ticks, and keep them loaded until released.
+   */
+  private void loadChunks(@Nonnull Location center) {
+    World world = center.getWorld();
+    int centerX = center.getBlockX() >> 4;
+    int centerZ = center.getBlockZ() >> 4;
+    long key = ((long) centerX << 32) | (centerZ & 0xFFFFFFFFL);
+    if (world == null || (world.equals(ticketWorld) && key == ticketCenter)) {
+      return;
+    }
+    releaseChunks();
+    ticketWorld = world;
+    ticketCenter = key;
+    List<int[]> pending = Lists.newArrayList();
+    for (int x = centerX - CHUNK_RADIUS; x <= centerX + CHUNK_RADIUS; x++) {
+      for (int z = centerZ - CHUNK_RADIUS; z <= centerZ + CHUNK_RADIUS; z++) {
+        pending.add(new int[]{x, z});
+      }
+    }
+    // Loading them all at once would be a lag spike of its own
+    loading = Bukkit.getScheduler().runTaskTimer(Workshop.getInstance(), Timings.task("classroom warmup", () -> {
+      for (int i = 0; i < CHUNKS_PER_TICK && !pending.isEmpty(); i++) {
+        int[] chunk = pending.remove(pending.size() - 1);
+        world.addPluginChunkTicket(chunk[0], chunk[1], Workshop.getInstance());
+        tickets.add(chunk);
+      }
+      if (pending.isEmpty()) {
+        loading.cancel();
+        loading = null;
+      }
+    }), 1, 1);
+  }
+
+  /**
+   * Let go of the chunks and the allowlists once no appointment is near.
+   * This must be called from the main thread.
+   */
+  void release() {
+    releaseChunks();
+    prepared.clear();
+    allowlists = Collections.emptyMap();
+  }
+
+  private void releaseChunks() {
+    if (loading != null) {
+      loading.cancel();
+      loading = null;
+    }
+    for (int[] chunk : tickets) {
+      ticketWorld.removePluginChunkTicket(chunk[0], chunk[1], Workshop.getInstance());
+    }
+    tickets.clear();
+    ticketWorld = null;
+  }
+
+  /**
+   * Get the players registered for a classroom, if it was prepared. This may be called from any thread.
+   *
+   * @param classroomId the id of the classroom
+   * @return the uuids of the players
+   */
+  @Nonnull
+  Optional<Set<UUID>> getAllowlist(@Nonnull String classroomId) {
+    return Optional.ofNullable(allowlists.get(classroomId));
+  }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.features.classes;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.pietersvenson.workshop.util.Format;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+
+import javax.annotation.Nonnull;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads classrooms in the format written by {@link Classroom#serialize()} directly from
+ * SnakeYAML parse events, so no intermediate tree of maps and lists is ever built.
+ * A classroom which can't be read is reported and skipped without affecting the others.
+ */
+final class ClassroomYamlReader {
+
+  private final Iterator<Event> events;
+  private int depth = 0;
+
+  private ClassroomYamlReader(@Nonnull Reader reader) {
+    this.events = new Yaml().parse(reader).iterator();
+  }
+
+  /**
+   * Read every classroom in a state file.
+   *
+   * @param reader  the source of the state file
+   * @param onError called with the id of each classroom that couldn't be read, and why
+   * @return the classrooms which were read, keyed by id
+   * @throws YAMLException if the file itself isn't valid YAML
+   */
+  @Nonnull
+  static Map<String, Classroom> readAll(@Nonnull Reader reader,
+                                        @Nonnull BiConsumer<String, Exception> onError) throws YAMLException {
+    ClassroomYamlReader in = new ClassroomYamlReader(reader);
+    Map<String, Classroom> out = Maps.newHashMap();
+    if (!in.startDocument()) {
+      return out;
+    }
+    Event root = in.next();
+    if (root instanceof ScalarEvent) {
+      // An empty document
+      return out;
+    }
+    in.expect(root, MappingStartEvent.class);
+    int classroomDepth = in.depth;
+    for (Event key = in.next(); !(key instanceof MappingEndEvent); key = in.next()) {
+      String id = in.scalar(key);
+      try {
+        Classroom classroom = in.readClassroom(id);
+        out.put(classroom.getId(), classroom);
+      } catch (ParseException | IllegalArgumentException | Schedule.OverlappingAppointmentException e) {
+        onError.accept(id, e);
+        in.skipTo(classroomDepth);
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Read a single classroom whose fields are the root of the document.
+   *
+   * @param id     the id of the classroom
+   * @param reader the source of the serialized classroom
+   * @return the classroom
+   * @throws Exception if the classroom couldn't be read
+   */
+  @Nonnull
+  static Classroom readOne(@Nonnull String id, @Nonnull Reader reader) throws Exception {
+    ClassroomYamlReader in = new ClassroomYamlReader(reader);
+    if (!in.startDocument()) {
+      throw new IllegalArgumentException("The classroom " + id + " is empty");
+    }
+    return in.readClassroom(id);
+  }
+
+  private boolean startDocument() {
+    expect(next(), StreamStartEvent.class);
+    Event event = next();
+    if (event instanceof StreamEndEvent) {
+      return false;
+    }
+    expect(event, DocumentStartEvent.class);
+    return true;
+  }
+
+  private Classroom readClassroom(String id) throws ParseException, Schedule.OverlappingAppointmentException {
+    expect(next(), MappingStartEvent.class);
+    Classroom classroom = new Classroom(id);
+    for (Event key = next(); !(key instanceof MappingEndEvent); key = next()) {
+      switch (scalar(key)) {
+        case "name":
+          classroom.setName(scalar(next()));
+          break;
+        case "curriculum":
+          String curriculum = scalar(next());
+          try {
+            classroom.setCurriculum(Curriculum.valueOf(curriculum));
+          } catch (IllegalArgumentException e) {
+            classroom.setCurriculum(Curriculum.NONE);
+          }
+          break;
+        case "schedule":
+          classroom.setSchedule(readSchedule());
+          break;
+        case "participants":
+          classroom.addParticipants(readParticipants());
+          break;
+        default:
+          skipValue();
+      }
+    }
+    return classroom;
+  }
+
+  private Schedule readSchedule() throws ParseException, Schedule.OverlappingAppointmentException {
+    expect(next(), SequenceStartEvent.class);
+    Schedule.Builder schedule = Schedule.builder();
+    for (Event item = next(); !(item instanceof SequenceEndEvent); item = next()) {
+      expect(item, MappingStartEvent.class);
+      String start = null;
+      String end = null;
+      String every = null;
+      String count = null;
+      String until = null;
+      List<String> cancelled = Lists.newArrayList();
+      for (Event key = next(); !(key instanceof MappingEndEvent); key = next()) {
+        switch (scalar(key)) {
+          case "start":
+            start = scalar(next());
+            break;
+          case "end":
+            end = scalar(next());
+            break;
+          case "every":
+            every = scalar(next());
+            break;
+          case "count":
+            count = scalar(next());
+            break;
+          case "until":
+            until = scalar(next());
+            break;
+          case "cancelled":
+            expect(next(), SequenceStartEvent.class);
+            for (Event occurrence = next(); !(occurrence instanceof SequenceEndEvent); occurrence = next()) {
+              cancelled.add(scalar(occurrence));
+            }
+            break;
+          default:
+            skipValue();
+        }
+      }
+      if (start == null || end == null) {
+        throw new IllegalArgumentException("An appointment is missing its start or end");
+      }
+      if (every == null) {
+        schedule.add(new Appointment(Format.parseInstantVerbose(start), Format.parseInstantVerbose(end)));
+      } else {
+        schedule.add(Recurrence.parse(start, end, every, count, until, cancelled));
+      }
+    }
+    return schedule.build();
+  }
+
+  private List<Classroom.Participant> readParticipants() {
+    expect(next(), SequenceStartEvent.class);
+    List<Classroom.Participant> participants = Lists.newLinkedList();
+    for (Event item = next(); !(item instanceof SequenceEndEvent); item = next()) {
+      expect(item, MappingStartEvent.class);
+      String firstName = null;
+      String lastName = null;
+      String uuid = null;
+      for (Event key = next(); !(key instanceof MappingEndEvent); key = next()) {
+        switch (scalar(key)) {
+          case "first_name":
+            firstName = scalar(next());
+            break;
+          case "last_name":
+            lastName = scalar(next());
+            break;
+          case "mc_uuid":
+            uuid = scalar(next());
+            break;
+          default:
+            skipValue();
+        }
+      }
+      if (firstName == null || lastName == null || uuid == null) {
+        throw new IllegalArgumentException("A participant is missing their name or uuid");
+      }
+      participants.add(new Classroom.Participant(firstName, lastName, UUID.fromString(uuid)));
+    }
+    return participants;
+  }
+
+  private Event next() {
+    if (!events.hasNext()) {
+      throw new YAMLException("Unexpected end of classroom data");
+    }
+    Event event = events.next();
+    if (event instanceof CollectionStartEvent) {
+      depth++;
+    } else if (event instanceof CollectionEndEvent) {
+      depth--;
+    } else if (event instanceof AliasEvent) {
+      throw new IllegalArgumentException("Aliases are not supported in classroom data");
+    }
+    return event;
+  }
+
+  private void expect(Event event, Class<? extends Event> type) {
+    if (!type.isInstance(event)) {
+      throw new IllegalArgumentException("Expected " + type.getSimpleName()
+          + " but found " + event.getClass().getSimpleName()
+          + " at " + event.getStartMark());
+    }
+  }
+
+  private String scalar(Event event) {
+    expect(event, ScalarEvent.class);
+    return ((ScalarEvent) event).getValue();
+  }
+
+  /**
+   * Skip the value of a mapping entry, including everything nested within it.
+   */
+  private void skipValue() {
+    int start = depth;
+    next();
+    while (depth > start) {
+      next();
+    }
+  }
+
+  /**
+   * Skip events until the nesting depth drops back to the given depth,
+   * leaving the reader positioned to read the next key at that depth.
+   */
+  private void skipTo(int target) {
+    while (depth > target) {
+      next();
+    }
+  }
+
+}
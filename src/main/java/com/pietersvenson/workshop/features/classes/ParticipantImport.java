@@ -0,0 +1,182 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.features.classes;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.pietersvenson.workshop.util.External;
+import com.pietersvenson.workshop.util.Validate;
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Participants read from a CSV file with the columns username, first name and last name.
+ * A header row is skipped. The file is streamed a row at a time, and the usernames
+ * are then resolved together in batches rather than one request each.
+ */
+public final class ParticipantImport {
+
+  private final List<Row> rows = Lists.newArrayList();
+  @Getter
+  private final List<String> rejected = Lists.newArrayList();
+
+  private ParticipantImport() {
+  }
+
+  /**
+   * Read the rows of a CSV file. Rows which are malformed are rejected rather than failing the whole file.
+   *
+   * @param reader the source of the file
+   * @return the import
+   * @throws IOException if the file could not be read
+   */
+  @Nonnull
+  public static ParticipantImport read(@Nonnull BufferedReader reader) throws IOException {
+    ParticipantImport out = new ParticipantImport();
+    Set<String> seen = Sets.newHashSet();
+    int lineNumber = 0;
+    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+      lineNumber++;
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      List<String> fields = splitLine(line);
+      if (lineNumber == 1 && fields.get(0).equalsIgnoreCase("username")) {
+        continue;
+      }
+      if (fields.size() != 3) {
+        out.rejected.add("Line " + lineNumber + ": expected a username, first name and last name");
+        continue;
+      }
+      String username = fields.get(0);
+      if (!Validate.isUsername(username)) {
+        out.rejected.add("Line " + lineNumber + ": " + username + " isn't a valid username");
+      } else if (!Validate.isName(fields.get(1)) || !Validate.isName(fields.get(2))) {
+        out.rejected.add("Line " + lineNumber + ": names must be comprised of only letters and hyphens");
+      } else if (!seen.add(username.toLowerCase())) {
+        out.rejected.add("Line " + lineNumber + ": " + username + " is listed more than once");
+      } else {
+        out.rows.add(new Row(lineNumber, username, fields.get(1), fields.get(2)));
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Split a line into fields, which may be quoted to contain commas. Quotes are escaped by doubling them.
+   */
+  private static List<String> splitLine(@Nonnull String line) {
+    List<String> out = Lists.newArrayList();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else {
+          quoted = !quoted;
+        }
+      } else if (c == ',' && !quoted) {
+        out.add(field.toString().trim());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    out.add(field.toString().trim());
+    return out;
+  }
+
+  /**
+   * Look up the uuids of every row.
+   *
+   * @return the future which completes when they are known
+   */
+  @Nonnull
+  public CompletableFuture<Void> resolve() {
+    return External.getPlayerUuids(rows.stream().map(row -> row.username).collect(Collectors.toList()))
+        .thenAccept(lookup -> rows.forEach(row -> {
+          row.uuid = lookup.get(row.username).orElse(null);
+          row.lookupFailed = lookup.isFailed(row.username);
+        }));
+  }
+
+  /**
+   * Add the participants to a classroom, rejecting the rows whose players don't exist, couldn't be looked up
+   * or are already registered.
+   * This must be called from the main thread after the uuids are resolved.
+   *
+   * @param classroom the classroom
+   * @return the number of participants added
+   */
+  public int addTo(@Nonnull Classroom classroom) {
+    List<Classroom.Participant> added = Lists.newArrayListWithCapacity(rows.size());
+    for (Row row : rows) {
+      if (row.lookupFailed) {
+        rejected.add("Line " + row.line + ": lookup failed for the username " + row.username + ", try again later");
+      } else if (row.uuid == null) {
+        rejected.add("Line " + row.line + ": no player exists with the username " + row.username);
+      } else if (classroom.isRegistered(row.uuid)) {
+        rejected.add("Line " + row.line + ": " + row.username + " is already registered");
+      } else {
+        Classroom.Participant participant = new Classroom.Participant(row.firstName, row.lastName, row.uuid);
+        participant.setLastKnownUsername(row.username);
+        added.add(participant);
+      }
+    }
+    classroom.addParticipants(added);
+    return added.size();
+  }
+
+  private static final class Row {
+
+    private final int line;
+    private final String username;
+    private final String firstName;
+    private final String lastName;
+    private volatile UUID uuid;
+    private volatile boolean lookupFailed;
+
+    private Row(int line, @Nonnull String username, @Nonnull String firstName, @Nonnull String lastName) {
+      this.line = line;
+      this.username = username;
+      this.firstName = firstName;
+      this.lastName = lastName;
+    }
+
+  }
+
+}
@@ -0,0 +1,429 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.features.classes;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+import com.pietersvenson.workshop.util.Format;
+
+import javax.annotation.Nonnull;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An appointment which repeats at a fixed period, kept as its rule rather than as a list of appointments.
+ * Occurrence {@code k} starts {@code k} periods after the first one and lasts just as long.
+ * Cancelled occurrences are kept as a sorted array of their numbers.
+ *
+ * <p>Every query is arithmetic on the rule. Loops only ever step over cancelled occurrences,
+ * so they run at most once more than the number of cancellations.
+ */
+final class Recurrence {
+
+  private static final int[] NONE = new int[0];
+
+  private final long first;
+  private final long duration;
+  private final long period;
+  private final int count;
+  private final int[] excluded;
+
+  Recurrence(long first, long duration, long period, int count, @Nonnull int[] excluded) throws IllegalArgumentException {
+    if (count < 1) {
+      throw new IllegalArgumentException("The count must be at least 1");
+    }
+    if (duration < 0) {
+      throw new IllegalArgumentException("The end date cannot be after the start date!");
+    }
+    if (count > 1 && period <= 0) {
+      throw new IllegalArgumentException("The period must be positive");
+    }
+    for (int i = 0; i < excluded.length; i++) {
+      if (excluded[i] < 0 || excluded[i] >= count || (i > 0 && excluded[i] <= excluded[i - 1])) {
+        throw new IllegalArgumentException("Invalid cancelled occurrences: " + Arrays.toString(excluded));
+      }
+    }
+    this.first = first;
+    this.duration = duration;
+    this.period = count > 1 ? period : 0;
+    this.count = count;
+    this.excluded = excluded;
+  }
+
+  Recurrence(long start, long end, long period, int count) throws IllegalArgumentException {
+    this(start, end - start, period, count, NONE);
+  }
+
+  /**
+   * Get the number of occurrences of a rule which runs until a time.
+   *
+   * @param first  the start of the first occurrence in epoch millis
+   * @param period the period in millis
+   * @param until  the latest start of an occurrence in epoch millis
+   * @return the count
+   */
+  static int countUntil(long first, long period, long until) {
+    if (until < first) {
+      throw new IllegalArgumentException("A schedule can't end before it starts");
+    }
+    return Ints.checkedCast(Math.floorDiv(until - first, period) + 1);
+  }
+
+  long getFirst() {
+    return first;
+  }
+
+  long getDuration() {
+    return duration;
+  }
+
+  long getPeriod() {
+    return period;
+  }
+
+  int getCount() {
+    return count;
+  }
+
+  /**
+   * Get the numbers of the cancelled occurrences. The array must not be modified.
+   *
+   * @return the sorted occurrence numbers
+   */
+  int[] getExcluded() {
+    return excluded;
+  }
+
+  /**
+   * Get the number of occurrences which haven't been cancelled.
+   *
+   * @return the size
+   */
+  int size() {
+    return count - excluded.length;
+  }
+
+  long startOf(int occurrence) {
+    return first + occurrence * period;
+  }
+
+  long endOf(int occurrence) {
+    return startOf(occurrence) + duration;
+  }
+
+  boolean isExcluded(int occurrence) {
+    return Arrays.binarySearch(excluded, occurrence) >= 0;
+  }
+
+  /**
+   * Cancel one occurrence.
+   *
+   * @param occurrence the occurrence number
+   * @return the new rule
+   */
+  @Nonnull
+  Recurrence exclude(int occurrence) {
+    int index = Arrays.binarySearch(excluded, occurrence);
+    if (index >= 0) {
+      return this;
+    }
+    index = -index - 1;
+    int[] out = new int[excluded.length + 1];
+    System.arraycopy(excluded, 0, out, 0, index);
+    out[index] = occurrence;
+    System.arraycopy(excluded, index, out, index + 1, excluded.length - index);
+    return new Recurrence(first, duration, period, count, out);
+  }
+
+  /**
+   * Whether consecutive occurrences overlap, inclusive of their starts and ends.
+   *
+   * @return true if the rule overlaps itself
+   */
+  boolean overlapsItself() {
+    return count > 1 && period <= duration;
+  }
+
+  /**
+   * Find the first occurrence from a number onwards which hasn't been cancelled.
+   *
+   * @param from the occurrence number
+   * @return the occurrence number, or -1 if there is none
+   */
+  int nextIncluded(long from) {
+    for (long k = Math.max(0, from); k < count; k++) {
+      if (!isExcluded((int) k)) {
+        return (int) k;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Find the last occurrence up to a number which hasn't been cancelled.
+   *
+   * @param to the occurrence number
+   * @return the occurrence number, or -1 if there is none
+   */
+  int previousIncluded(long to) {
+    for (long k = Math.min(count - 1, to); k >= 0; k--) {
+      if (!isExcluded((int) k)) {
+        return (int) k;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Find the occurrence which includes a time, inclusive of its start and end.
+   * The rule must not overlap itself.
+   *
+   * @param time the time in epoch millis
+   * @return the occurrence number, or -1 if there is none
+   */
+  int occurrenceAt(long time) {
+    if (time < first) {
+      return -1;
+    }
+    int k = count == 1 ? 0 : (int) Math.min(count - 1, (time - first) / period);
+    return time <= endOf(k) && !isExcluded(k) ? k : -1;
+  }
+
+  /**
+   * Find the first occurrence which starts after a time.
+   *
+   * @param time the time in epoch millis
+   * @return the occurrence number, or -1 if there is none
+   */
+  int nextAfter(long time) {
+    if (time < first) {
+      return nextIncluded(0);
+    }
+    return count == 1 ? -1 : nextIncluded((time - first) / period + 1);
+  }
+
+  /**
+   * Count the occurrences which end after a time.
+   *
+   * @param time the time in epoch millis
+   * @return the count
+   */
+  int countEndingAfter(long time) {
+    long from = count == 1
+        ? (endOf(0) > time ? 0 : 1)
+        : Math.max(0, Math.floorDiv(time - duration - first, period) + 1);
+    if (from >= count) {
+      return 0;
+    }
+    int index = Arrays.binarySearch(excluded, (int) from);
+    int cancelledBefore = index >= 0 ? index : -index - 1;
+    return (int) (count - from) - (excluded.length - cancelledBefore);
+  }
+
+  /**
+   * Check whether any occurrence intersects a range, inclusive of the starts and ends.
+   *
+   * @param start the start of the range in epoch millis
+   * @param end   the end of the range in epoch millis
+   * @return true if they overlap
+   */
+  boolean overlaps(long start, long end) {
+    if (count == 1) {
+      return first <= end && start <= first + duration && !isExcluded(0);
+    }
+    // Occurrence k intersects the range when first + k * period <= end and start <= first + k * period + duration
+    long low = Math.max(0, ceilDiv(start - duration - first, period));
+    long high = Math.min(count - 1, Math.floorDiv(end - first, period));
+    if (low > high) {
+      return false;
+    }
+    int next = nextIncluded(low);
+    return next >= 0 && next <= high;
+  }
+
+  /**
+   * Visit every occurrence which intersects a range, inclusive of the starts and ends, in order.
+   *
+   * @param start   the start of the range in epoch millis
+   * @param end     the end of the range in epoch millis
+   * @param visitor the visitor, which returns false to stop
+   */
+  void forEachBetween(long start, long end, @Nonnull Schedule.AppointmentVisitor visitor) {
+    long low = count == 1 ? 0 : Math.max(0, ceilDiv(start - duration - first, period));
+    long high = count == 1 ? 0 : Math.min(count - 1, Math.floorDiv(end - first, period));
+    for (int k = nextIncluded(low); k >= 0 && k <= high; k = nextIncluded(k + 1)) {
+      if (startOf(k) <= end && start <= endOf(k) && !visitor.visit(startOf(k), endOf(k))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Check whether any occurrences of two rules overlap, inclusive of their starts and ends.
+   * Rules with the same period are compared in constant time apart from their cancellations.
+   * Otherwise, the occurrences of the shorter rule are each compared against the other.
+   *
+   * @param other the other rule
+   * @return true if they overlap
+   */
+  boolean overlaps(@Nonnull Recurrence other) {
+    if (count == 1) {
+      return !isExcluded(0) && other.overlaps(first, first + duration);
+    }
+    if (other.count == 1) {
+      return other.overlaps(this);
+    }
+    if (period != other.period) {
+      Recurrence shorter = count <= other.count ? this : other;
+      Recurrence longer = shorter == this ? other : this;
+      for (int k = shorter.nextIncluded(0); k >= 0; k = shorter.nextIncluded(k + 1)) {
+        if (longer.overlaps(shorter.startOf(k), shorter.endOf(k))) {
+          return true;
+        }
+      }
+      return false;
+    }
+    // Occurrences i and j = i - m intersect when the offset between them,
+    // first - other.first + m * period, is between -duration and other.duration
+    long offset = first - other.first;
+    long lowShift = Math.max(-(other.count - 1), ceilDiv(-duration - offset, period));
+    long highShift = Math.min(count - 1, Math.floorDiv(other.duration - offset, period));
+    for (long m = lowShift; m <= highShift; m++) {
+      long high = Math.min(count - 1, other.count - 1 + m);
+      for (long i = Math.max(0, m); i <= high; i++) {
+        // Every miss is a cancellation of one of the rules, so this stops soon
+        if (!isExcluded((int) i) && !other.isExcluded((int) (i - m))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static long ceilDiv(long dividend, long divisor) {
+    return -Math.floorDiv(-dividend, divisor);
+  }
+
+  @Nonnull
+  Appointment get(int occurrence) {
+    return new Appointment(Instant.ofEpochMilli(startOf(occurrence)), Instant.ofEpochMilli(endOf(occurrence)));
+  }
+
+  /**
+   * Serialize the rule in the same form as an appointment, with its repetition alongside.
+   *
+   * @return the serialized form
+   */
+  @Nonnull
+  Map<String, Object> serialize() {
+    Map<String, Object> out = Maps.newTreeMap();
+    out.put("start", Format.formatInstantVerbose(Instant.ofEpochMilli(first)));
+    out.put("end", Format.formatInstantVerbose(Instant.ofEpochMilli(first + duration)));
+    out.put("every", Duration.ofMillis(period).toString());
+    out.put("count", count);
+    if (excluded.length > 0) {
+      out.put("cancelled", Ints.asList(excluded));
+    }
+    return out;
+  }
+
+  /**
+   * Deserialize a rule written by {@link #serialize()}.
+   * An {@code until} time may be given instead of the {@code count}.
+   *
+   * @param data the serialized form
+   * @return the rule
+   * @throws ParseException           if a time is malformed
+   * @throws IllegalArgumentException if the rule is invalid
+   */
+  @Nonnull
+  static Recurrence deserialize(@Nonnull Map<String, Object> data) throws ParseException, IllegalArgumentException {
+    List<String> cancelled = Lists.newArrayList();
+    Object listed = data.get("cancelled");
+    if (listed instanceof List) {
+      for (Object occurrence : (List<?>) listed) {
+        cancelled.add(String.valueOf(occurrence));
+      }
+    }
+    return parse(String.valueOf(data.get("start")),
+        String.valueOf(data.get("end")),
+        String.valueOf(data.get("every")),
+        data.containsKey("count") ? String.valueOf(data.get("count")) : null,
+        data.containsKey("until") ? String.valueOf(data.get("until")) : null,
+        cancelled);
+  }
+
+  /**
+   * Parse a rule from the scalar values of its serialized form.
+   *
+   * @param start     the start of the first occurrence
+   * @param end       the end of the first occurrence
+   * @param every     the period, in ISO-8601 duration format
+   * @param count     the number of occurrences, or null if until is given
+   * @param until     the latest start of an occurrence, or null if count is given
+   * @param cancelled the cancelled occurrence numbers
+   * @return the rule
+   * @throws ParseException           if a time is malformed
+   * @throws IllegalArgumentException if the rule is invalid
+   */
+  @Nonnull
+  static Recurrence parse(@Nonnull String start,
+                          @Nonnull String end,
+                          @Nonnull String every,
+                          String count,
+                          String until,
+                          @Nonnull List<String> cancelled) throws ParseException, IllegalArgumentException {
+    long first = Format.parseInstantVerbose(start).toEpochMilli();
+    long last = Format.parseInstantVerbose(end).toEpochMilli();
+    long period;
+    try {
+      period = Duration.parse(every).toMillis();
+    } catch (DateTimeParseException | ArithmeticException e) {
+      throw new IllegalArgumentException("Invalid repetition period: " + every, e);
+    }
+    int total;
+    if (count != null) {
+      total = Integer.parseInt(count);
+    } else if (until != null) {
+      total = countUntil(first, period, Format.parseInstantVerbose(until).toEpochMilli());
+    } else {
+      throw new IllegalArgumentException("A repeating appointment needs a count or an end");
+    }
+    int[] excluded = new int[cancelled.size()];
+    for (int i = 0; i < excluded.length; i++) {
+      excluded[i] = Integer.parseInt(cancelled.get(i));
+    }
+    Arrays.sort(excluded);
+    return new Recurrence(first, last - first, period, total, excluded);
+  }
+
+}
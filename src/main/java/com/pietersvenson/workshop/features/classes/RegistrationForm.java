@@ -55,6 +55,11 @@ public class RegistrationForm {
   private String firstName;
   private String lastName;
 
+  // The player is frozen once, and prompted again only when the stage changes or the prompt is due
+  private boolean frozen = false;
+  private int promptedStage = -1;
+  private long lastPrompted;
+
   public String message() {
     return Stage.values()[cursor].message;
   }
@@ -67,6 +72,43 @@ public class RegistrationForm {
     return cursor >= Stage.values().length;
   }
 
+  /**
+   * Move to the frozen state, if the player isn't frozen already.
+   *
+   * @return true if the freeze has to be applied now
+   */
+  boolean freeze() {
+    if (frozen) {
+      return false;
+    }
+    frozen = true;
+    return true;
+  }
+
+  /**
+   * Record a prompt if the stage changed since the last one or the interval has passed.
+   *
+   * @param now      the current time in epoch millis
+   * @param interval the minimum time between prompts of the same stage in millis
+   * @return true if the prompt has to be sent now
+   */
+  boolean prompt(long now, long interval) {
+    if (promptedStage == cursor && now - lastPrompted < interval) {
+      return false;
+    }
+    promptedStage = cursor;
+    lastPrompted = now;
+    return true;
+  }
+
+  /**
+   * Go back to the initial state, because the freeze and prompt were lost when the player logged out.
+   */
+  void reset() {
+    frozen = false;
+    promptedStage = -1;
+  }
+
   public Classroom.Participant complete(@Nonnull UUID uuid) {
     return new Classroom.Participant(firstName, lastName, Objects.requireNonNull(uuid));
   }
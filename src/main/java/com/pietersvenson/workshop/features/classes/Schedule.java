@@ -26,31 +26,49 @@
 package com.pietersvenson.workshop.features.classes;
 
 import com.google.common.collect.Lists;
+import com.pietersvenson.workshop.state.StateInput;
+import com.pietersvenson.workshop.state.StateOutput;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.text.ParseException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
+/**
+ * A set of appointments which don't overlap with each other.
+ * Single appointments are kept as parallel arrays of start and end times in epoch millis,
+ * sorted by start time, so that checking the schedule at an instant is a binary search
+ * which allocates nothing. Since the appointments don't overlap, the end times are sorted too.
+ * Repeating appointments are kept as {@link Recurrence} rules, whose occurrences are computed when needed.
+ */
 public class Schedule {
 
-
-
   public enum Status {
     PRE,
     DURING,
     POST,
     EMPTY;
   }
-  private LinkedList<Appointment> appointments = Lists.newLinkedList();
+
+  private static final long[] NO_TIMES = new long[0];
+  private static final Recurrence[] NO_RULES = new Recurrence[0];
+
+  private long[] starts = NO_TIMES;
+  private long[] ends = NO_TIMES;
+  private int size = 0;
+  // Sorted by first start. Replaced rather than modified, since the rules are shared between copies
+  private Recurrence[] rules = NO_RULES;
+  // Counts changes, so that anything derived from the appointments can tell when it's stale
+  private int modCount = 0;
 
   public static Schedule empty() {
     return new Schedule();
@@ -69,22 +87,27 @@ public class Schedule {
   public static Schedule repeating(@Nonnull Appointment first,
                                    @Nonnull Duration period,
                                    int count) throws OverlappingAppointmentException {
-    Schedule out = new Schedule();
-    out.addRepeating(
-        Objects.requireNonNull(first),
-        Objects.requireNonNull(period),
-        count);
-    return out;
+    return builder()
+        .addRepeating(Objects.requireNonNull(first), Objects.requireNonNull(period), count)
+        .build();
   }
 
   public static Schedule combine(@Nonnull Collection<Schedule> schedules) throws OverlappingAppointmentException {
-    Schedule out = new Schedule();
+    Builder builder = builder();
     for (Schedule input : schedules) {
-      for (Appointment appointment : input.appointments) {
-        out.add(appointment);
-      }
+      builder.add(input);
     }
-    return out;
+    return builder.build();
+  }
+
+  /**
+   * Start building a schedule from many appointments at once.
+   * The appointments are sorted and checked for overlaps once, when the schedule is built.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder();
   }
 
   /**
@@ -94,70 +117,196 @@ public class Schedule {
   }
 
   public void add(@Nonnull Appointment appointment) throws OverlappingAppointmentException {
-    for (Appointment cur : appointments) {
-      if (appointment.overlaps(cur)) {
+    insert(appointment.getStart().toEpochMilli(), appointment.getEnd().toEpochMilli());
+  }
+
+  /**
+   * Add all appointments of another schedule. Nothing is added if any of them overlap.
+   *
+   * @param schedule the other schedule
+   * @throws OverlappingAppointmentException if any appointments would overlap
+   */
+  public void add(@Nonnull Schedule schedule) throws OverlappingAppointmentException {
+    if (schedule.size() > 0) {
+      replaceWith(builder().add(this).add(schedule).build());
+    }
+  }
+
+  /**
+   * Copy this schedule, so that the copy can be read from another thread while this one changes.
+   *
+   * @return the copy
+   */
+  @Nonnull
+  Schedule copy() {
+    Schedule out = new Schedule();
+    out.starts = Arrays.copyOf(starts, size);
+    out.ends = Arrays.copyOf(ends, size);
+    out.size = size;
+    out.rules = rules.clone();
+    return out;
+  }
+
+  private void replaceWith(@Nonnull Schedule built) {
+    starts = built.starts;
+    ends = built.ends;
+    size = built.size;
+    rules = built.rules;
+    modCount++;
+  }
+
+  private void insert(long start, long end) throws OverlappingAppointmentException {
+    int index = upperBound(start);
+    // Only the neighbours can overlap, because the other appointments are further away
+    if ((index > 0 && ends[index - 1] >= start) || (index < size && starts[index] <= end)) {
+      throw new OverlappingAppointmentException("Appointments can't overlap with each other");
+    }
+    for (Recurrence rule : rules) {
+      if (rule.overlaps(start, end)) {
         throw new OverlappingAppointmentException("Appointments can't overlap with each other");
       }
     }
-    this.appointments.add(appointment);
-    Collections.sort(appointments);
+    if (size == starts.length) {
+      int capacity = Math.max(4, size * 2);
+      starts = Arrays.copyOf(starts, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+    }
+    System.arraycopy(starts, index, starts, index + 1, size - index);
+    System.arraycopy(ends, index, ends, index + 1, size - index);
+    starts[index] = start;
+    ends[index] = end;
+    size++;
+    modCount++;
   }
 
-  public void add(@Nonnull Schedule schedule) throws OverlappingAppointmentException {
-    for (Appointment appointment : schedule.appointments) {
-      add(appointment);
+  /**
+   * Find the first single appointment which starts after a time.
+   *
+   * @param time the time in epoch millis
+   * @return the index of the appointment, or the number of single appointments if there is none
+   */
+  private int upperBound(long time) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (starts[mid] <= time) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
     }
+    return low;
   }
 
+  /**
+   * Add an appointment and its repetitions. Nothing is added if any of them overlap.
+   *
+   * @param first  the first appointment
+   * @param period the time between the starts of the repetitions
+   * @param count  the total number of appointments
+   * @throws IllegalArgumentException        if the count is less than 1
+   * @throws OverlappingAppointmentException if any appointments would overlap
+   */
   public void addRepeating(@Nonnull Appointment first,
                            @Nonnull Duration period,
                            int count) throws IllegalArgumentException, OverlappingAppointmentException {
-    if (count < 1) {
-      throw new IllegalArgumentException("The count must be at least 1");
-    }
-    Appointment cur = first;
-    for (int i = 0; i < count; i++) {
-      add(cur);
-      cur = cur.shifted(period);
-    }
+    replaceWith(builder().add(this).addRepeating(first, period, count).build());
   }
 
   @Nonnull
   public Status getStatus() {
-    if (appointments.isEmpty()) {
+    Optional<Appointment> first = getFirst();
+    if (!first.isPresent()) {
       return Status.EMPTY;
     }
-    if (appointments.getFirst().getStart().isAfter(Instant.now())) {
+    Instant now = Instant.now();
+    if (first.get().getStart().isAfter(now)) {
       return Status.PRE;
     }
-    if (appointments.getLast().getEnd().isAfter(Instant.now())) {
+    if (getLast().get().getEnd().isAfter(now)) {
       return Status.DURING;
     }
     return Status.POST;
   }
 
+  /**
+   * Get the appointment which starts first.
+   *
+   * @return the appointment, or empty if there are none
+   */
+  public Optional<Appointment> getFirst() {
+    Cursor cursor = new Cursor();
+    return cursor.advance() ? Optional.of(cursor.get()) : Optional.empty();
+  }
+
+  /**
+   * Get the appointment which ends last.
+   *
+   * @return the appointment, or empty if there are none
+   */
+  public Optional<Appointment> getLast() {
+    Appointment out = size > 0 ? get(size - 1) : null;
+    for (Recurrence rule : rules) {
+      int last = rule.previousIncluded(rule.getCount() - 1);
+      if (out == null || rule.endOf(last) > out.getEnd().toEpochMilli()) {
+        out = rule.get(last);
+      }
+    }
+    return Optional.ofNullable(out);
+  }
+
   public boolean includes(@Nonnull Instant instant) {
-    if (appointments.isEmpty()) {
-      return false;
-    }
-    int index = Collections.binarySearch(
-        appointments.stream()
-            .map(Appointment::getStart)
-            .collect(Collectors.toList()),
-        instant);
-    if (index >= 0) {
+    return includes(instant.toEpochMilli());
+  }
+
+  /**
+   * Check whether any appointment includes a time, inclusive of its start and end.
+   *
+   * @param time the time in epoch millis
+   * @return true if it's during an appointment
+   */
+  public boolean includes(long time) {
+    int index = upperBound(time) - 1;
+    if (index >= 0 && time <= ends[index]) {
       return true;
     }
-    if (index == -1 ) {
-      return false;
+    for (Recurrence rule : rules) {
+      if (rule.occurrenceAt(time) >= 0) {
+        return true;
+      }
     }
-    return appointments.get(Math.abs(index) - 2).includes(instant);
+    return false;
   }
 
   public boolean overlaps(@Nonnull Schedule other) {
-    for (Appointment app1 : appointments) {
-      for (Appointment app2 : other.appointments) {
-        if (app1.overlaps(app2)) {
+    int i = 0;
+    int j = 0;
+    while (i < size && j < other.size) {
+      if (starts[i] <= other.ends[j] && other.starts[j] <= ends[i]) {
+        return true;
+      }
+      if (ends[i] < other.ends[j]) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return overlapsRules(other) || other.overlapsRules(this);
+  }
+
+  /**
+   * Check the rules of this schedule against all appointments of another.
+   */
+  private boolean overlapsRules(@Nonnull Schedule other) {
+    for (Recurrence rule : rules) {
+      for (int i = 0; i < other.size; i++) {
+        if (rule.overlaps(other.starts[i], other.ends[i])) {
+          return true;
+        }
+      }
+      for (Recurrence otherRule : other.rules) {
+        if (rule.overlaps(otherRule)) {
           return true;
         }
       }
@@ -166,60 +315,473 @@ public class Schedule {
   }
 
   public boolean isContinuous() {
-    return appointments.size() <= 1;
+    return size() <= 1;
   }
 
   public Optional<Appointment> nextAppointment() {
-    for (Appointment appointment : appointments) {
-      if (appointment.getStart().isAfter(Instant.now())) {
-        return Optional.of(appointment);
+    long now = System.currentTimeMillis();
+    int index = upperBound(now);
+    Appointment out = index < size ? get(index) : null;
+    for (Recurrence rule : rules) {
+      int next = rule.nextAfter(now);
+      if (next >= 0 && (out == null || rule.startOf(next) < out.getStart().toEpochMilli())) {
+        out = rule.get(next);
       }
     }
-    return Optional.empty();
+    return Optional.ofNullable(out);
+  }
+
+  /**
+   * Count the appointments which haven't ended yet.
+   *
+   * @return the count
+   */
+  public int countRemaining() {
+    long now = System.currentTimeMillis();
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (ends[mid] <= now) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    int out = size - low;
+    for (Recurrence rule : rules) {
+      out += rule.countEndingAfter(now);
+    }
+    return out;
   }
 
   public Schedule repeat(@Nonnull Duration duration, int count) throws OverlappingAppointmentException {
-    List<Schedule> repeatedAppointments = Lists.newLinkedList();
-    for (Appointment appointment : appointments) {
-      repeatedAppointments.add(Schedule.repeating(appointment, duration, count));
+    Builder builder = builder();
+    for (int i = 0; i < size; i++) {
+      builder.addRepeating(starts[i], ends[i], duration.toMillis(), count);
+    }
+    for (Recurrence rule : rules) {
+      for (int k = rule.nextIncluded(0); k >= 0; k = rule.nextIncluded(k + 1)) {
+        builder.addRepeating(rule.startOf(k), rule.endOf(k), duration.toMillis(), count);
+      }
     }
-    return Schedule.combine(repeatedAppointments);
+    return builder.build();
   }
 
   public Schedule repeatComponent(Duration duration, int count, int indexToRepeat) throws OverlappingAppointmentException {
-    if (indexToRepeat < 0 || indexToRepeat >= appointments.size()) {
+    if (indexToRepeat < 0 || indexToRepeat >= size()) {
       throw new IndexOutOfBoundsException("The requested repeated index is out of bounds in this Schedule");
     }
-    Schedule out = new Schedule();
-    out.appointments.addAll(this.appointments);
-    Appointment toRepeat = out.appointments.get(indexToRepeat);
-    out.appointments.remove(indexToRepeat);
-    out.addRepeating(toRepeat, duration, count);
-    return out;
+    Cursor repeated = locate(indexToRepeat);
+    Builder builder = builder();
+    for (int i = 0; i < size; i++) {
+      if (repeated.rule >= 0 || i != repeated.occurrence) {
+        builder.add(starts[i], ends[i]);
+      }
+    }
+    for (int r = 0; r < rules.length; r++) {
+      builder.add(r == repeated.rule ? rules[r].exclude(repeated.occurrence) : rules[r]);
+    }
+    return builder.addRepeating(repeated.start, repeated.end, duration.toMillis(), count).build();
   }
 
+  /**
+   * Cancel an appointment. An occurrence of a repeating appointment is cancelled by excluding it from its rule.
+   *
+   * @param appointmentIndex the index of the appointment, in order of start
+   * @throws IndexOutOfBoundsException if there is no such appointment
+   */
   public void cancel(int appointmentIndex) throws IndexOutOfBoundsException {
-    this.appointments.remove(appointmentIndex);
+    if (appointmentIndex < 0 || appointmentIndex >= size()) {
+      throw new IndexOutOfBoundsException("Index: " + appointmentIndex + ", Size: " + size());
+    }
+    Cursor cancelled = locate(appointmentIndex);
+    if (cancelled.rule < 0) {
+      int index = cancelled.occurrence;
+      System.arraycopy(starts, index + 1, starts, index, size - index - 1);
+      System.arraycopy(ends, index + 1, ends, index, size - index - 1);
+      size--;
+    } else {
+      Recurrence rule = rules[cancelled.rule].exclude(cancelled.occurrence);
+      Recurrence[] replaced;
+      if (rule.size() == 0) {
+        replaced = new Recurrence[rules.length - 1];
+        System.arraycopy(rules, 0, replaced, 0, cancelled.rule);
+        System.arraycopy(rules, cancelled.rule + 1, replaced, cancelled.rule, rules.length - cancelled.rule - 1);
+      } else {
+        replaced = rules.clone();
+        replaced[cancelled.rule] = rule;
+      }
+      rules = replaced;
+    }
+    modCount++;
+  }
+
+  private Cursor locate(int index) {
+    Cursor cursor = new Cursor();
+    for (int i = 0; i <= index; i++) {
+      cursor.advance();
+    }
+    return cursor;
+  }
+
+  int getModCount() {
+    return modCount;
+  }
+
+  /**
+   * Get the number of appointments, counting every occurrence of repeating appointments.
+   *
+   * @return the size
+   */
+  public int size() {
+    int out = size;
+    for (Recurrence rule : rules) {
+      out += rule.size();
+    }
+    return out;
+  }
+
+  /**
+   * Visit the start and end of every appointment in order of start.
+   *
+   * @param visitor the visitor, which returns false to stop
+   */
+  void forEach(@Nonnull AppointmentVisitor visitor) {
+    Cursor cursor = new Cursor();
+    while (cursor.advance() && visitor.visit(cursor.start, cursor.end)) {
+      // Keep going
+    }
+  }
+
+  /**
+   * Visit the start and end of every single appointment in order of start, leaving out the rules.
+   *
+   * @param visitor the visitor, which returns false to stop
+   */
+  void forEachSingle(@Nonnull AppointmentVisitor visitor) {
+    for (int i = 0; i < size && visitor.visit(starts[i], ends[i]); i++) {
+      // Keep going
+    }
+  }
+
+  /**
+   * Get the repeating appointments. The array must not be modified.
+   *
+   * @return the rules
+   */
+  Recurrence[] getRules() {
+    return rules;
+  }
+
+  private Appointment get(int index) {
+    return new Appointment(Instant.ofEpochMilli(starts[index]), Instant.ofEpochMilli(ends[index]));
   }
 
   public LinkedList<Appointment> getAppointments() {
-    LinkedList<Appointment> out = Lists.newLinkedList();
-    appointments.forEach(app -> out.add(app.copy()));
+    return Lists.newLinkedList(getAppointments(0, Integer.MAX_VALUE));
+  }
+
+  /**
+   * Get a range of the appointments in order of start.
+   * Only the appointments up to the end of the range are computed.
+   *
+   * @param from  the index of the first appointment
+   * @param limit the maximum number of appointments
+   * @return the appointments
+   */
+  public List<Appointment> getAppointments(int from, int limit) {
+    List<Appointment> out = Lists.newArrayList();
+    Cursor cursor = new Cursor();
+    for (int i = 0; out.size() < limit && cursor.advance(); i++) {
+      if (i >= from) {
+        out.add(cursor.get());
+      }
+    }
     return out;
   }
 
   public List<Object> serialize() {
-    return appointments.stream().map(Appointment::serialize).collect(Collectors.toList());
+    List<Object> out = Lists.newArrayListWithCapacity(size + rules.length);
+    int r = 0;
+    for (int i = 0; i < size; i++) {
+      while (r < rules.length && rules[r].getFirst() < starts[i]) {
+        out.add(rules[r++].serialize());
+      }
+      out.add(get(i).serialize());
+    }
+    while (r < rules.length) {
+      out.add(rules[r++].serialize());
+    }
+    return out;
   }
 
+  @SuppressWarnings("unchecked")
   public static Schedule deserialize(List<Object> data) throws ParseException, OverlappingAppointmentException {
-    Schedule out = new Schedule();
+    Builder builder = builder();
     for (Object item : data) {
-      out.add(Appointment.deserialize((Map<String, String>) item));
+      Map<String, Object> map = (Map<String, Object>) item;
+      if (map.containsKey("every")) {
+        builder.add(Recurrence.deserialize(map));
+      } else {
+        builder.add(Appointment.deserialize((Map<String, String>) item));
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Write the appointments in the binary state format.
+   *
+   * @param out the output
+   * @throws IOException if it could not be written
+   */
+  public void write(@Nonnull StateOutput out) throws IOException {
+    out.writeInt(size);
+    for (int i = 0; i < size; i++) {
+      out.writeLong(starts[i]);
+      out.writeLong(ends[i]);
+    }
+    out.writeInt(rules.length);
+    for (Recurrence rule : rules) {
+      out.writeLong(rule.getFirst());
+      out.writeLong(rule.getDuration());
+      out.writeLong(rule.getPeriod());
+      out.writeInt(rule.getCount());
+      out.writeInt(rule.getExcluded().length);
+      for (int occurrence : rule.getExcluded()) {
+        out.writeInt(occurrence);
+      }
+    }
+  }
+
+  /**
+   * Read a schedule written by {@link #write(StateOutput)}.
+   * The appointments were already sorted and checked for overlaps when they were written.
+   * Version 1 had no repeating appointments.
+   *
+   * @param in      the input
+   * @param version the version of the binary state
+   * @return the schedule
+   * @throws IOException if the data is malformed
+   */
+  public static Schedule read(@Nonnull StateInput in, int version) throws IOException {
+    Schedule out = new Schedule();
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException("Invalid appointment count: " + count);
+    }
+    out.starts = new long[count];
+    out.ends = new long[count];
+    for (int i = 0; i < count; i++) {
+      out.starts[i] = in.readLong();
+      out.ends[i] = in.readLong();
+    }
+    out.size = count;
+    if (version >= 2) {
+      int ruleCount = in.readInt();
+      if (ruleCount < 0) {
+        throw new IOException("Invalid repeating appointment count: " + ruleCount);
+      }
+      out.rules = new Recurrence[ruleCount];
+      for (int r = 0; r < ruleCount; r++) {
+        long first = in.readLong();
+        long duration = in.readLong();
+        long period = in.readLong();
+        int occurrences = in.readInt();
+        int[] excluded = new int[in.readInt()];
+        for (int i = 0; i < excluded.length; i++) {
+          excluded[i] = in.readInt();
+        }
+        try {
+          out.rules[r] = new Recurrence(first, duration, period, occurrences, excluded);
+        } catch (IllegalArgumentException | NegativeArraySizeException e) {
+          throw new IOException("Invalid repeating appointment", e);
+        }
+      }
     }
     return out;
   }
 
+  /**
+   * Receives the start and end of appointments in epoch millis.
+   */
+  @FunctionalInterface
+  interface AppointmentVisitor {
+
+    boolean visit(long start, long end);
+
+  }
+
+  /**
+   * Walks through the single appointments and the occurrences of every rule together, in order of start.
+   */
+  private final class Cursor {
+
+    private int nextSingle = 0;
+    private final int[] nextOccurrences = new int[rules.length];
+
+    // The rule of the current appointment, or -1 if it's a single appointment
+    private int rule;
+    // The occurrence number of the current appointment in its rule, or its index if it's a single appointment
+    private int occurrence;
+    private long start;
+    private long end;
+
+    private Cursor() {
+      for (int r = 0; r < rules.length; r++) {
+        nextOccurrences[r] = rules[r].nextIncluded(0);
+      }
+    }
+
+    private boolean advance() {
+      rule = -2;
+      start = Long.MAX_VALUE;
+      if (nextSingle < size) {
+        rule = -1;
+        start = starts[nextSingle];
+      }
+      for (int r = 0; r < rules.length; r++) {
+        if (nextOccurrences[r] >= 0 && rules[r].startOf(nextOccurrences[r]) < start) {
+          rule = r;
+          start = rules[r].startOf(nextOccurrences[r]);
+        }
+      }
+      if (rule == -2) {
+        return false;
+      }
+      if (rule == -1) {
+        occurrence = nextSingle++;
+        end = ends[occurrence];
+      } else {
+        occurrence = nextOccurrences[rule];
+        end = rules[rule].endOf(occurrence);
+        nextOccurrences[rule] = rules[rule].nextIncluded(occurrence + 1);
+      }
+      return true;
+    }
+
+    private Appointment get() {
+      return new Appointment(Instant.ofEpochMilli(start), Instant.ofEpochMilli(end));
+    }
+
+  }
+
+  /**
+   * Collects appointments in any order and sorts them once.
+   */
+  public static final class Builder {
+
+    private long[] starts = new long[16];
+    private long[] ends = new long[16];
+    private int size = 0;
+    private final List<Recurrence> rules = Lists.newArrayList();
+
+    private Builder() {
+    }
+
+    public Builder add(@Nonnull Appointment appointment) {
+      return add(appointment.getStart().toEpochMilli(), appointment.getEnd().toEpochMilli());
+    }
+
+    public Builder add(@Nonnull Schedule schedule) {
+      for (int i = 0; i < schedule.size; i++) {
+        add(schedule.starts[i], schedule.ends[i]);
+      }
+      for (Recurrence rule : schedule.rules) {
+        add(rule);
+      }
+      return this;
+    }
+
+    /**
+     * Add an appointment and its repetitions, which are kept as a rule rather than listed.
+     *
+     * @param first  the first appointment
+     * @param period the time between the starts of the repetitions
+     * @param count  the total number of appointments
+     * @return this builder
+     * @throws IllegalArgumentException if the count is less than 1
+     */
+    public Builder addRepeating(@Nonnull Appointment first,
+                                @Nonnull Duration period,
+                                int count) throws IllegalArgumentException {
+      return addRepeating(first.getStart().toEpochMilli(), first.getEnd().toEpochMilli(), period.toMillis(), count);
+    }
+
+    Builder add(long start, long end) {
+      if (size == starts.length) {
+        starts = Arrays.copyOf(starts, size * 2);
+        ends = Arrays.copyOf(ends, size * 2);
+      }
+      starts[size] = start;
+      ends[size] = end;
+      size++;
+      return this;
+    }
+
+    Builder add(@Nonnull Recurrence rule) {
+      if (rule.getCount() == 1) {
+        if (rule.size() == 1) {
+          add(rule.startOf(0), rule.endOf(0));
+        }
+      } else if (rule.size() > 0) {
+        rules.add(rule);
+      }
+      return this;
+    }
+
+    private Builder addRepeating(long start, long end, long period, int count) throws IllegalArgumentException {
+      return add(new Recurrence(start, end, period, count));
+    }
+
+    /**
+     * Sort the appointments and check them for overlaps.
+     * The single appointments are checked in a single sweep and the rules arithmetically.
+     *
+     * @return the schedule
+     * @throws OverlappingAppointmentException if any of the appointments overlap
+     */
+    public Schedule build() throws OverlappingAppointmentException {
+      Schedule out = new Schedule();
+      out.starts = Arrays.copyOf(starts, size);
+      out.ends = Arrays.copyOf(ends, size);
+      out.size = size;
+      // The starts and ends are sorted separately. If the appointments don't overlap, the order by start
+      // is the order by end, so every pair stays together. If any do overlap, some instant is covered twice,
+      // so some start in sorted order comes no later than the end before it.
+      Arrays.sort(out.starts);
+      Arrays.sort(out.ends);
+      for (int i = 1; i < size; i++) {
+        if (out.starts[i] <= out.ends[i - 1]) {
+          throw new OverlappingAppointmentException("Appointments can't overlap with each other");
+        }
+      }
+      out.rules = rules.toArray(NO_RULES);
+      Arrays.sort(out.rules, Comparator.comparingLong(Recurrence::getFirst));
+      for (int r = 0; r < out.rules.length; r++) {
+        Recurrence rule = out.rules[r];
+        if (rule.overlapsItself()) {
+          throw new OverlappingAppointmentException("Appointments can't overlap with each other");
+        }
+        for (int other = r + 1; other < out.rules.length; other++) {
+          if (rule.overlaps(out.rules[other])) {
+            throw new OverlappingAppointmentException("Appointments can't overlap with each other");
+          }
+        }
+        // Only the single appointments within the span of the rule can overlap it
+        long last = rule.endOf(rule.getCount() - 1);
+        for (int i = Math.max(0, out.upperBound(rule.getFirst()) - 1); i < size && out.starts[i] <= last; i++) {
+          if (rule.overlaps(out.starts[i], out.ends[i])) {
+            throw new OverlappingAppointmentException("Appointments can't overlap with each other");
+          }
+        }
+      }
+      return out;
+    }
+
+  }
+
   public static class OverlappingAppointmentException extends Exception {
 
     public OverlappingAppointmentException(String s) {
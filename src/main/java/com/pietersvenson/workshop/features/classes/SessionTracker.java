@@ -0,0 +1,171 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.features.classes;
+
+import com.google.common.collect.Lists;
+import com.pietersvenson.workshop.Workshop;
+import com.pietersvenson.workshop.config.Settings;
+import com.pietersvenson.workshop.util.Timings;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of which classroom is in session, so that it doesn't have to be looked up on every event.
+ * The session is worked out again at the next appointment boundary, with a single scheduled task,
+ * and whenever the classrooms change. {@link ClassroomSessionStartEvent} and {@link ClassroomSessionEndEvent}
+ * are called when it changes. The next appointment is warmed up by {@link ClassroomWarmup}
+ * a configured number of minutes before it starts, with the same task.
+ * Who may log in is worked out again at the same time.
+ */
+final class SessionTracker {
+
+  // Scheduled ticks drift from the clock when the server lags, so check at least this often
+  private static final long MAX_DELAY_TICKS = 20 * 60;
+
+  private final ClassroomManager manager;
+  private final ClassroomWarmup warmup;
+  private volatile String current;
+  private volatile Admission admission = Admission.OPEN;
+  private BukkitTask boundaryTask;
+  private boolean refreshScheduled = false;
+
+  SessionTracker(@Nonnull ClassroomManager manager) {
+    this.manager = manager;
+    this.warmup = new ClassroomWarmup(manager);
+  }
+
+  /**
+   * Get the id of the classroom in session. This may be called from any thread.
+   *
+   * @return the id of the classroom
+   */
+  @Nonnull
+  Optional<String> getCurrent() {
+    return Optional.ofNullable(current);
+  }
+
+  /**
+   * Get who may log in right now. This may be called from any thread.
+   *
+   * @return the admission
+   */
+  @Nonnull
+  Admission getAdmission() {
+    return admission;
+  }
+
+  /**
+   * Get the players registered for a classroom, if it's in session or about to be.
+   * This may be called from any thread.
+   *
+   * @param classroomId the id of the classroom
+   * @return the uuids of the players
+   */
+  @Nonnull
+  Optional<Set<UUID>> getAllowlist(@Nonnull String classroomId) {
+    return warmup.getAllowlist(classroomId);
+  }
+
+  /**
+   * Work out the session again on the next tick. Repeated calls before then are coalesced.
+   * This must be called from the main thread.
+   */
+  void scheduleRefresh() {
+    if (!refreshScheduled) {
+      refreshScheduled = true;
+      Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("classroom sessions", this::refresh));
+    }
+  }
+
+  /**
+   * Work out which classroom is in session now, call the events if it changed,
+   * and schedule the next check for the next appointment boundary.
+   * This must be called from the main thread.
+   */
+  void refresh() {
+    refreshScheduled = false;
+    long now = System.currentTimeMillis();
+    ClassroomTimeline timeline = manager.getTimeline();
+    Optional<ClassroomTimeline.Entry> session = timeline.getAt(now);
+    String previous = current;
+    String next = session.map(ClassroomTimeline.Entry::getClassroomId).orElse(null);
+    if (previous != null && !previous.equals(next)) {
+      current = null;
+      manager.getClassroom(previous).ifPresent(classroom ->
+          Bukkit.getPluginManager().callEvent(new ClassroomSessionEndEvent(classroom)));
+    }
+    current = next;
+    if (next != null && !next.equals(previous)) {
+      manager.getClassroom(next).ifPresent(classroom ->
+          Bukkit.getPluginManager().callEvent(new ClassroomSessionStartEvent(classroom)));
+    }
+    // Registering only matters while a classroom is in session
+    manager.refreshListeners();
+    Workshop.getInstance().getState().getPlayerContexts().refreshAll();
+
+    if (boundaryTask != null) {
+      boundaryTask.cancel();
+      boundaryTask = null;
+    }
+    // Appointments include their end, so the session ends just after it
+    Optional<ClassroomTimeline.Entry> upcoming = timeline.getNext(now);
+    Optional<Long> boundary = session.isPresent()
+        ? session.map(entry -> entry.getEnd().toEpochMilli() + 1)
+        : upcoming.map(entry -> entry.getStart().toEpochMilli());
+
+    // The session in progress is warmed up too, in case the server started during it
+    long lead = TimeUnit.MINUTES.toMillis(Settings.CLASS_WARMUP_MINUTES.getValue());
+    Optional<ClassroomTimeline.Entry> warming = upcoming.filter(entry -> entry.getStart().toEpochMilli() - lead <= now);
+    List<ClassroomTimeline.Entry> prepared = Lists.newArrayListWithCapacity(2);
+    session.ifPresent(prepared::add);
+    warming.ifPresent(prepared::add);
+    warmup.prepare(prepared);
+    admission = !manager.hasAny()
+        ? Admission.OPEN
+        : session.flatMap(entry -> manager.getClassroom(entry.getClassroomId()))
+            .map(classroom -> Admission.session(classroom,
+                warmup.getAllowlist(classroom.getId()).orElse(Collections.emptySet())))
+            .orElseGet(Admission::closed);
+    if (upcoming.isPresent() && !warming.isPresent()) {
+      long warmupAt = upcoming.get().getStart().toEpochMilli() - lead;
+      boundary = Optional.of(boundary.map(time -> Math.min(time, warmupAt)).orElse(warmupAt));
+    }
+
+    if (boundary.isPresent()) {
+      long ticks = Math.max(1, Math.min(MAX_DELAY_TICKS, (boundary.get() - now + 49) / 50));
+      boundaryTask = Bukkit.getScheduler().runTaskLater(Workshop.getInstance(), Timings.task("classroom sessions", this::refresh), ticks);
+    }
+  }
+
+}
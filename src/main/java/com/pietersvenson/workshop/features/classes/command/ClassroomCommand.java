@@ -46,7 +46,8 @@ public final class ClassroomCommand extends FunctionlessCommandNode {
         new ClassroomInfoCommand(this),
         new ClassroomPublicCommand(this),
         new ClassroomWhoisCommand(this),
-        new ClassroomDismissCommand(this));
+        new ClassroomDismissCommand(this),
+        new ClassroomConflictsCommand(this));
     setEnabler(Settings.ENABLE_CLASSES);
   }
 
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.features.classes.command;
+
+import com.pietersvenson.workshop.Workshop;
+import com.pietersvenson.workshop.command.common.CommandNode;
+import com.pietersvenson.workshop.features.classes.ClassroomTimeline;
+import com.pietersvenson.workshop.permission.Permissions;
+import com.pietersvenson.workshop.util.Format;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+public class ClassroomConflictsCommand extends CommandNode {
+
+  public ClassroomConflictsCommand(@Nullable CommandNode parent) {
+    super(parent,
+        Permissions.STAFF,
+        "Find all appointments of different classes which overlap",
+        "conflicts");
+  }
+
+  @Override
+  public boolean onWrappedCommand(@Nonnull CommandSender sender,
+                                  @Nonnull Command command,
+                                  @Nonnull String label,
+                                  @Nonnull String[] args) {
+    List<ClassroomTimeline.Conflict> conflicts = Workshop.getInstance()
+        .getState()
+        .getClassroomManager()
+        .getTimeline()
+        .getConflicts();
+    if (conflicts.isEmpty()) {
+      sender.sendMessage(Format.success("No classes conflict with each other"));
+      return true;
+    }
+    sender.sendMessage(Format.warn(conflicts.size() + " conflicts:"));
+    SimpleDateFormat format = new SimpleDateFormat("yy/MM/dd HH:mm");
+    for (ClassroomTimeline.Conflict conflict : conflicts) {
+      sender.sendMessage(ChatColor.GRAY + "- "
+          + ChatColor.AQUA + conflict.getFirst().getClassroomId()
+          + ChatColor.RESET + " and "
+          + ChatColor.AQUA + conflict.getSecond().getClassroomId()
+          + ChatColor.RESET + " on "
+          + format.format(Date.from(conflict.getSecond().getStart())));
+    }
+    return true;
+  }
+}
@@ -58,8 +58,8 @@ public class ClassroomDismissCommand extends CommandNode {
       return false;
     }
     List<Player> toKick = Bukkit.getOnlinePlayers().stream()
-        .filter(player -> !player.hasPermission(Permissions.STAFF))
-        .filter(player -> classroom.get().getParticipants().stream().anyMatch(part -> part.getPlayerUuid().equals(player.getUniqueId())))
+        .filter(player -> !Workshop.getInstance().getState().getPlayerContexts().isStaff(player))
+        .filter(player -> classroom.get().isRegistered(player.getUniqueId()))
         .collect(Collectors.toList());
     for (Player player : toKick) {
       Optional<Appointment> next = classroom.get().getSchedule().nextAppointment();
@@ -33,6 +33,7 @@ import com.pietersvenson.workshop.command.common.ParameterSuppliers;
 import com.pietersvenson.workshop.features.classes.Appointment;
 import com.pietersvenson.workshop.features.classes.Classroom;
 import com.pietersvenson.workshop.features.classes.ClassroomManager;
+import com.pietersvenson.workshop.features.classes.Schedule;
 import com.pietersvenson.workshop.permission.Permissions;
 import com.pietersvenson.workshop.util.External;
 import com.pietersvenson.workshop.util.Format;
@@ -89,7 +90,7 @@ public class ClassroomInfoCommand extends CommandNode {
         + classroom.get().getParticipants().size());
     sender.sendMessage(Format.PREFIX + ChatColor.AQUA + "Schedule: "
         + ChatColor.RESET
-        + classroom.get().getSchedule().getAppointments().size() + " appointments");
+        + classroom.get().getSchedule().size() + " appointments");
 
     return true;
   }
@@ -138,12 +139,18 @@ public class ClassroomInfoCommand extends CommandNode {
 
   public static final class ClassroomInfoScheduleCommand extends CommandNode {
 
+    private static final int PAGE_SIZE = 10;
+
     public ClassroomInfoScheduleCommand(@Nullable CommandNode parent) {
       super(parent, Permissions.STAFF,
           "Display the schedule of a class",
           "schedule");
       addSubcommand(Parameter.builder().supplier(ParameterSuppliers.CLASS_ID).build(),
           "Use the class id to get the schedule");
+      addSubcommand(Parameter.chain(
+          Parameter.builder().supplier(ParameterSuppliers.CLASS_ID).build(),
+          Parameter.basic("<page>")),
+          "Use the class id and a page number to get part of the schedule");
     }
 
     @Override
@@ -162,15 +169,29 @@ public class ClassroomInfoCommand extends CommandNode {
         return false;
       }
 
-      List<Appointment> appointments = classroom.get().getSchedule().getAppointments();
-      if (appointments.isEmpty()) {
+      Schedule schedule = classroom.get().getSchedule();
+      int pages = (schedule.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+      int page;
+      try {
+        page = args.length < 2 ? 1 : Integer.parseInt(args[1]);
+      } catch (NumberFormatException e) {
+        sendCommandError(sender, "The page must be an integer");
+        return false;
+      }
+      if (pages == 0) {
         sender.sendMessage(Format.success("There are currently no appointments"));
+      } else if (page < 1 || page > pages) {
+        sendCommandError(sender, "The page must be between 1 and " + pages);
+        return false;
       } else {
-        sender.sendMessage(Format.success("Class " + args[0] + " Schedule:"));
+        sender.sendMessage(Format.success("Class " + args[0] + " Schedule (page " + page + " of " + pages + "):"));
+        // Occurrences of repeating appointments are only computed up to the requested page
+        int from = (page - 1) * PAGE_SIZE;
+        List<Appointment> appointments = schedule.getAppointments(from, PAGE_SIZE);
         SimpleDateFormat df = new SimpleDateFormat("yy/MM/dd HH:mm");
         IntStream.range(0, appointments.size()).forEach(
             i -> sender.sendMessage(Format.PREFIX
-                + ChatColor.GRAY + (i + 1) + ". "
+                + ChatColor.GRAY + (from + i + 1) + ". "
                 + ChatColor.AQUA + df.format(Date.from(appointments.get(i).getStart()))
                 + ChatColor.GRAY + " --> "
                 + ChatColor.AQUA + df.format(Date.from(appointments.get(i).getEnd()))));
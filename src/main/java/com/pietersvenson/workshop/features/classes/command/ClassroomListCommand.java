@@ -38,7 +38,6 @@ import org.bukkit.command.CommandSender;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.text.SimpleDateFormat;
-import java.time.Instant;
 import java.util.Date;
 
 public class ClassroomListCommand extends CommandNode {
@@ -70,13 +69,13 @@ public class ClassroomListCommand extends CommandNode {
         if (schedule.getStatus() == Schedule.Status.EMPTY) {
           out += "No appointments";
         } else if (schedule.getStatus() == Schedule.Status.PRE) {
-          out += "Starts on " + new SimpleDateFormat("yy/MM/dd").format(Date.from(schedule.getAppointments().getFirst().getStart()))
+          out += "Starts on " + new SimpleDateFormat("yy/MM/dd").format(Date.from(schedule.getFirst().get().getStart()))
               + "; "
-              + schedule.getAppointments().size() + " appointments";
+              + schedule.size() + " appointments";
         } else if (schedule.getStatus() == Schedule.Status.DURING) {
-          out += "In Progress; " + schedule.getAppointments().stream().filter(app -> Instant.now().isBefore(app.getEnd())).count() + " appointments remaining";
+          out += "In Progress; " + schedule.countRemaining() + " appointments remaining";
         } else {
-          out += "Completed on " + new SimpleDateFormat("yy/MM/dd").format(Date.from(schedule.getAppointments().getLast().getEnd()));
+          out += "Completed on " + new SimpleDateFormat("yy/MM/dd").format(Date.from(schedule.getLast().get().getEnd()));
         }
         sender.sendMessage(out);
       }
@@ -41,6 +41,8 @@ import org.bukkit.command.CommandSender;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class ClassroomWhoisCommand extends CommandNode {
 
@@ -63,28 +65,28 @@ public class ClassroomWhoisCommand extends CommandNode {
       return false;
     }
     Optional<Classroom> classroom = Workshop.getInstance().getState().getClassroomManager().getInSession();
-    if (!classroom.isPresent()) {
-      sender.sendMessage(Format.error("There are no classes currently in session"));
-      return false;
-    }
     External.getPlayerUuid(args[0]).thenAccept(uuid -> {
       if (!uuid.isPresent()) {
         sendCommandError(sender, CommandError.NO_PLAYER);
         return;
       }
-      Optional<Classroom.Participant> participant = classroom.get().getParticipants()
-          .stream()
-          .filter(part -> part.getPlayerUuid().equals(uuid.get()))
-          .findAny();
-      if (!participant.isPresent()) {
-        sender.sendMessage(Format.error("There is no registered participant in the current class with that username"));
+      Optional<Classroom.Participant> participant = classroom.flatMap(inSession -> inSession.getParticipant(uuid.get()));
+      if (participant.isPresent()) {
+        sender.sendMessage(Format.PREFIX
+            + ChatColor.LIGHT_PURPLE + args[0]
+            + Format.INFO + " is "
+            + ChatColor.GREEN + participant.get().getFirstName() + " "
+            + participant.get().getLastName());
         return;
       }
-      sender.sendMessage(Format.PREFIX
-          + ChatColor.LIGHT_PURPLE + args[0]
-          + Format.INFO + " is "
-          + ChatColor.GREEN + participant.get().getFirstName() + " "
-          + participant.get().getLastName());
+      sender.sendMessage(Format.error(classroom.isPresent()
+          ? "There is no registered participant in the current class with that username"
+          : "There are no classes currently in session"));
+      Set<String> ids = Workshop.getInstance().getState().getClassroomManager().getRegisteredClassroomIds(uuid.get());
+      if (!ids.isEmpty()) {
+        sender.sendMessage(Format.info("They are registered in: "
+            + ChatColor.GREEN + String.join(Format.INFO + ", " + ChatColor.GREEN, new TreeSet<>(ids))));
+      }
     });
     return true;
   }
@@ -82,7 +82,7 @@ public class CurriculumCommand extends CommandNode {
     }
     classroom.get().setCurriculum(curriculum);
     sender.sendMessage(Format.success("Curriculum set!"));
-    Workshop.getInstance().saveStateSynchronous();
+    manager.saveClassroom(classroom.get());
     return true;
   }
 
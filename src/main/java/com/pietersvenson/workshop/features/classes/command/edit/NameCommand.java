@@ -80,7 +80,7 @@ public class NameCommand extends CommandNode {
     }
     classroom.get().setName(args[1]);
     sender.sendMessage(Format.success("Class name set!"));
-    Workshop.getInstance().saveStateSynchronous();
+    manager.saveClassroom(classroom.get());
     return true;
   }
 
@@ -33,15 +33,25 @@ import com.pietersvenson.workshop.command.common.Parameter;
 import com.pietersvenson.workshop.command.common.ParameterSuppliers;
 import com.pietersvenson.workshop.features.classes.Classroom;
 import com.pietersvenson.workshop.features.classes.ClassroomManager;
+import com.pietersvenson.workshop.features.classes.ParticipantImport;
 import com.pietersvenson.workshop.permission.Permissions;
 import com.pietersvenson.workshop.util.External;
 import com.pietersvenson.workshop.util.Format;
+import com.pietersvenson.workshop.util.Timings;
 import com.pietersvenson.workshop.util.Validate;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -55,6 +65,7 @@ public class ParticipantsCommand extends CommandNode {
         "Manage the participant list of a class",
         "participants");
     addChildren(new ParticipantsAddCommand(this),
+        new ParticipantsImportCommand(this),
         new ParticipantsRemoveCommand(this));
   }
 
@@ -104,7 +115,7 @@ public class ParticipantsCommand extends CommandNode {
         return false;
       }
 
-      External.getPlayerUuid(args[1]).thenAccept(uuid -> {
+      External.getPlayerUuid(args[1]).thenAccept(uuid -> Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("participant add", () -> {
         if (!uuid.isPresent()) {
           sender.sendMessage(Format.error("No player exists with that username"));
           return;
@@ -115,13 +126,97 @@ public class ParticipantsCommand extends CommandNode {
           return;
         }
         // Set player with correct capitalization (because the argument might not have had it)
-        External.getPlayerName(out.getPlayerUuid())
-            .thenAccept(nameOp ->
-                nameOp.ifPresent(out::setLastKnownUsername));
+        out.resolveUsername();
         classroom.get().addParticipant(out);
         sender.sendMessage(Format.success("Player added!"));
-        Workshop.getInstance().saveStateSynchronous();
-      });
+        manager.saveClassroom(classroom.get());
+      })));
+      return true;
+    }
+  }
+
+  public static class ParticipantsImportCommand extends CommandNode {
+
+    // Rejected rows past this many are only counted, so that a bad file doesn't flood the chat
+    private static final int REJECTED_SHOWN = 10;
+
+    public ParticipantsImportCommand(@Nullable CommandNode parent) {
+      super(parent,
+          Permissions.STAFF,
+          "Add many participants to this class from a CSV file",
+          "import");
+      addSubcommand(Parameter.chain(
+          Parameter.builder().supplier(ParameterSuppliers.CLASS_ID).build(),
+          Parameter.basic("<file>")),
+          "Import a CSV file of username, first name and last name from the plugin folder");
+    }
+
+    @Override
+    public boolean onWrappedCommand(@Nonnull CommandSender sender,
+                                    @Nonnull Command command,
+                                    @Nonnull String label,
+                                    @Nonnull String[] args) {
+      if (args.length < 2) {
+        sendCommandError(sender, CommandError.FEW_ARGUMENTS);
+        return false;
+      }
+      ClassroomManager manager = Workshop.getInstance().getState().getClassroomManager();
+      if (!manager.getClassroom(args[0]).isPresent()) {
+        sender.sendMessage(Format.error("That class doesn't exist!"));
+        return false;
+      }
+      File file;
+      try {
+        File folder = Workshop.getInstance().getDataFolder().getCanonicalFile();
+        file = new File(folder, args[1]).getCanonicalFile();
+        if (!file.toPath().startsWith(folder.toPath())) {
+          sender.sendMessage(Format.error("The file must be in the plugin folder"));
+          return false;
+        }
+      } catch (IOException e) {
+        sender.sendMessage(Format.error("That file couldn't be found"));
+        return false;
+      }
+      if (!file.isFile()) {
+        sender.sendMessage(Format.error("That file couldn't be found"));
+        return false;
+      }
+
+      sender.sendMessage(Format.info("Importing participants..."));
+      Bukkit.getScheduler().runTaskAsynchronously(Workshop.getInstance(), Timings.task("participant import read", () -> {
+        ParticipantImport parsed;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+          parsed = ParticipantImport.read(reader);
+        } catch (IOException e) {
+          Workshop.getInstance().getLogger().severe("An error occurred trying to read " + file.getName());
+          e.printStackTrace();
+          Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("participant import", () ->
+              sender.sendMessage(Format.error("That file couldn't be read"))));
+          return;
+        }
+        parsed.resolve().thenRun(() -> Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("participant import", () -> {
+          // The classroom may have been removed while the usernames were looked up
+          Optional<Classroom> classroom = manager.getClassroom(args[0]);
+          if (!classroom.isPresent()) {
+            sender.sendMessage(Format.error("That class doesn't exist!"));
+            return;
+          }
+          int added = parsed.addTo(classroom.get());
+          if (added > 0) {
+            manager.saveClassroom(classroom.get());
+          }
+          sender.sendMessage(Format.success(added + " participants added"));
+          List<String> rejected = parsed.getRejected();
+          if (!rejected.isEmpty()) {
+            sender.sendMessage(Format.warn(rejected.size() + " rows were rejected:"));
+            rejected.stream().limit(REJECTED_SHOWN).forEach(reason ->
+                sender.sendMessage(Format.PREFIX + ChatColor.GRAY + "- " + reason));
+            if (rejected.size() > REJECTED_SHOWN) {
+              sender.sendMessage(Format.PREFIX + ChatColor.GRAY + "- and " + (rejected.size() - REJECTED_SHOWN) + " more");
+            }
+          }
+        })));
+      }));
       return true;
     }
   }
@@ -147,6 +242,8 @@ public class ParticipantsCommand extends CommandNode {
                             .getClassroomManager()
                             .getClassroom(prev.get(0))
                             .map(classroom -> classroom.getParticipants().stream()
+                                // Names which aren't known yet are looked up for the next completion
+                                .peek(Classroom.Participant::resolveUsername)
                                 .map(Classroom.Participant::getLastKnownUsername)
                                 .filter(Objects::nonNull)
                                 .collect(Collectors.toList()))
@@ -174,17 +271,18 @@ public class ParticipantsCommand extends CommandNode {
         return false;
       }
 
-      External.getPlayerUuid(args[1]).thenAccept(uuid -> {
+      External.getPlayerUuid(args[1]).thenAccept(uuid -> Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("participant remove", () -> {
         if (!uuid.isPresent()) {
           sender.sendMessage(Format.error("No player exists with that username."));
           return;
         }
         if (classroom.get().removeParticipant(uuid.get())) {
           sender.sendMessage(Format.success("Player removed!"));
+          manager.saveClassroom(classroom.get());
         } else {
           sender.sendMessage(Format.error("That player isn't in the class!"));
         }
-      });
+      })));
       return true;
     }
   }
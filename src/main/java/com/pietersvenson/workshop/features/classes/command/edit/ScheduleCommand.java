@@ -35,6 +35,7 @@ import com.pietersvenson.workshop.command.common.ParameterSuppliers;
 import com.pietersvenson.workshop.features.classes.Appointment;
 import com.pietersvenson.workshop.features.classes.Classroom;
 import com.pietersvenson.workshop.features.classes.ClassroomManager;
+import com.pietersvenson.workshop.features.classes.ClassroomTimeline;
 import com.pietersvenson.workshop.features.classes.Schedule;
 import com.pietersvenson.workshop.permission.Permissions;
 import com.pietersvenson.workshop.util.Format;
@@ -49,6 +50,7 @@ import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -86,7 +88,7 @@ public class ScheduleCommand extends FunctionlessCommandNode {
                         .getClassroomManager()
                         .getClassroom(prev.get(0));
                     return classroom.map(value ->
-                        IntStream.range(1, value.getSchedule().getAppointments().size() + 1)
+                        IntStream.range(1, value.getSchedule().size() + 1)
                             .boxed()
                             .map(Object::toString)
                             .collect(Collectors.toList()))
@@ -114,7 +116,7 @@ public class ScheduleCommand extends FunctionlessCommandNode {
         sender.sendMessage("That class doesn't exist!");
         return false;
       }
-      if (classroom.get().getSchedule().getAppointments().isEmpty()) {
+      if (classroom.get().getSchedule().size() == 0) {
         sender.sendMessage("There are no appointments scheduled!");
         return false;
       }
@@ -125,11 +127,11 @@ public class ScheduleCommand extends FunctionlessCommandNode {
         return false;
       } catch (IndexOutOfBoundsException e) {
         sendCommandError(sender, "The index must be between 1 and "
-            + (classroom.get().getSchedule().getAppointments().size()));
+            + (classroom.get().getSchedule().size()));
         return false;
       }
       sender.sendMessage(Format.success("That appointment was canceled"));
-      Workshop.getInstance().saveStateSynchronous();
+      Workshop.getInstance().getState().getClassroomManager().saveClassroom(classroom.get());
       return true;
     }
   }
@@ -218,7 +220,7 @@ public class ScheduleCommand extends FunctionlessCommandNode {
             new Appointment(firstClassStart, firstClassEnd),
             period,
             dayCount);
-        return attemptToAddSchedule(this, sender, classroom.get().getSchedule(), toAdd);
+        return attemptToAddSchedule(this, sender, classroom.get(), toAdd);
       } catch (ParseException e) {
         sendCommandError(sender, "Incorrect input format!");
         return false;
@@ -269,7 +271,7 @@ public class ScheduleCommand extends FunctionlessCommandNode {
           classEnd = classEnd.plus(1, ChronoUnit.DAYS);
         }
         Schedule toAdd = Schedule.single(new Appointment(classStart, classEnd));
-        return attemptToAddSchedule(this, sender, classroom.get().getSchedule(), toAdd);
+        return attemptToAddSchedule(this, sender, classroom.get(), toAdd);
       } catch (ParseException e) {
         sendCommandError(sender, "Incorrect input format!");
         return false;
@@ -277,27 +279,21 @@ public class ScheduleCommand extends FunctionlessCommandNode {
     }
   }
 
-  private static boolean attemptToAddSchedule(CommandNode node, CommandSender sender, Schedule first, Schedule second) {
+  private static boolean attemptToAddSchedule(CommandNode node, CommandSender sender, Classroom classroom, Schedule second) {
     try {
-      if (first.overlaps(second)) {
+      ClassroomManager manager = Workshop.getInstance().getState().getClassroomManager();
+      List<ClassroomTimeline.Entry> conflicts = manager.getConflicts(second);
+      if (conflicts.stream().anyMatch(entry -> entry.getClassroomId().equals(classroom.getId()))) {
         node.sendCommandError(sender, "That operation would create a conflicting appointment!");
         return false;
       }
-      ClassroomManager manager = Workshop.getInstance().getState().getClassroomManager();
-      for (Optional<Classroom> c : Workshop.getInstance().getState()
-          .getClassroomManager()
-          .getClassroomIds()
-          .stream()
-          .map(manager::getClassroom)
-          .collect(Collectors.toList())) {
-        if (c.isPresent() && c.get().getSchedule().overlaps(second)) {
-          node.sendCommandError(sender, "That operation would create conflicting classes!");
-          return false;
-        }
+      if (!conflicts.isEmpty()) {
+        node.sendCommandError(sender, "That operation would create conflicting classes!");
+        return false;
       }
-      first.add(second);
+      classroom.getSchedule().add(second);
       sender.sendMessage(Format.success("Schedule added!"));
-      Workshop.getInstance().saveStateSynchronous();
+      manager.saveClassroom(classroom);
       return true;
     } catch (Schedule.OverlappingAppointmentException e) {
       // Just verify here, but it shouldn't be called
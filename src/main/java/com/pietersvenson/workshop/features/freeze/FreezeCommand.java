@@ -84,7 +84,7 @@ public class FreezeCommand extends CommandNode {
             freezeManager.unfreeze(player);
             sender.sendMessage(Format.success("Unfroze " + player.getName()));
           } else {
-            if (player.hasPermission(Permissions.STAFF)) {
+            if (Workshop.getInstance().getState().getPlayerContexts().isStaff(player)) {
               sender.sendMessage(Format.error("You can't freeze staff!"));
             } else {
               freezeManager.freeze(player);
@@ -93,7 +93,7 @@ public class FreezeCommand extends CommandNode {
           }
         } else {
           if (args[1].equalsIgnoreCase("true") || args[1].equalsIgnoreCase("t")) {
-            if (player.hasPermission(Permissions.STAFF)) {
+            if (Workshop.getInstance().getState().getPlayerContexts().isStaff(player)) {
               sender.sendMessage(Format.error("You can't freeze staff!"));
               return false;
             }
@@ -44,31 +44,36 @@ public class FreezeListener extends FeatureListener {
     super(Settings.ENABLE_FREEZE);
   }
 
-  @FeatureEventHandler
+  @Override
+  public boolean isDemanded() {
+    return Workshop.getInstance().getState().getFreezeManager().isAnyFrozen();
+  }
+
+  @FeatureEventHandler(onDemand = true)
   public void onPlayerMove(PlayerMoveEvent playerMoveEvent) {
-    if (Workshop.getInstance().getState().getFreezeManager().isFrozen(playerMoveEvent.getPlayer())) {
+    if (Workshop.getInstance().getState().getPlayerContexts().get(playerMoveEvent.getPlayer()).isFrozen()) {
       playerMoveEvent.setCancelled(true);
     }
   }
 
-  @FeatureEventHandler
+  @FeatureEventHandler(onDemand = true)
   public void onPlayerInteract(PlayerInteractEvent playerInteractEvent) {
-    if (Workshop.getInstance().getState().getFreezeManager().isFrozen(playerInteractEvent.getPlayer())) {
+    if (Workshop.getInstance().getState().getPlayerContexts().get(playerInteractEvent.getPlayer()).isFrozen()) {
       playerInteractEvent.setCancelled(true);
     }
   }
 
-  @FeatureEventHandler
+  @FeatureEventHandler(onDemand = true)
   public void onPlayerChat(AsyncPlayerChatEvent playerChatEvent) {
-    if (Workshop.getInstance().getState().getFreezeManager().isFrozen(playerChatEvent.getPlayer())) {
+    if (Workshop.getInstance().getState().getPlayerContexts().get(playerChatEvent.getPlayer()).isFrozen()) {
       playerChatEvent.setCancelled(true);
       playerChatEvent.getPlayer().sendMessage(Format.error("You can't chat when you are frozen!"));
     }
   }
 
-  @FeatureEventHandler
+  @FeatureEventHandler(onDemand = true)
   public void onPlayerCommandPreprocess(PlayerCommandPreprocessEvent playerCommandEvent) {
-    if (Workshop.getInstance().getState().getFreezeManager().isFrozen(playerCommandEvent.getPlayer())) {
+    if (Workshop.getInstance().getState().getPlayerContexts().get(playerCommandEvent.getPlayer()).isFrozen()) {
       playerCommandEvent.setCancelled(true);
       playerCommandEvent.getPlayer().sendMessage(Format.error("You can't run commands when you are frozen!"));
     }
@@ -26,9 +26,9 @@
 package com.pietersvenson.workshop.features.freeze;
 
 import com.google.common.collect.Sets;
+import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.features.FeatureListener;
 import com.pietersvenson.workshop.features.FeatureManager;
-import com.pietersvenson.workshop.permission.Permissions;
 import com.pietersvenson.workshop.util.Format;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
@@ -53,6 +53,8 @@ public class FreezeManager extends FeatureManager {
     Bukkit.getOnlinePlayers().forEach(this::unfreeze);
     frozenPlayers.clear();
     allFrozen = false;
+    refreshListeners();
+    Workshop.getInstance().getState().getPlayerContexts().refreshAll();
   }
 
   /**
@@ -62,12 +64,14 @@ public class FreezeManager extends FeatureManager {
    * @return true if player was frozen properly
    */
   public boolean freeze(Player player) {
-    if (player.hasPermission(Permissions.STAFF)) {
+    if (Workshop.getInstance().getState().getPlayerContexts().isStaff(player)) {
       return false;
     }
     boolean out = frozenPlayers.add(player.getUniqueId());
     if (out) {
       player.sendMessage(Format.error("You have been frozen!"));
+      refreshListeners();
+      Workshop.getInstance().getState().getPlayerContexts().refresh(player);
     }
     return out;
   }
@@ -82,6 +86,8 @@ public class FreezeManager extends FeatureManager {
     boolean out = frozenPlayers.remove(player.getUniqueId());
     if (out) {
       player.sendMessage(Format.success("You have been unfrozen!"));
+      refreshListeners();
+      Workshop.getInstance().getState().getPlayerContexts().refresh(player);
     }
     return out;
   }
@@ -90,6 +96,10 @@ public class FreezeManager extends FeatureManager {
     return allFrozen;
   }
 
+  public boolean isAnyFrozen() {
+    return !frozenPlayers.isEmpty();
+  }
+
   public boolean isFrozen(Player player) {
     return frozenPlayers.contains(player.getUniqueId());
   }
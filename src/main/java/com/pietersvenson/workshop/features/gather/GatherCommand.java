@@ -25,6 +25,7 @@
 
 package com.pietersvenson.workshop.features.gather;
 
+import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.command.common.CommandNode;
 import com.pietersvenson.workshop.command.common.LambdaCommandNode;
 import com.pietersvenson.workshop.permission.Permissions;
@@ -45,7 +46,7 @@ public final class GatherCommand extends LambdaCommandNode {
           if (sender instanceof Player) {
             Player staff = (Player) sender;
             Bukkit.getOnlinePlayers().forEach(player -> {
-              if (!player.hasPermission(Permissions.STAFF) && !player.getUniqueId().equals(staff.getUniqueId())) {
+              if (!Workshop.getInstance().getState().getPlayerContexts().isStaff(player) && !player.getUniqueId().equals(staff.getUniqueId())) {
                 player.teleport(staff.getLocation());
                 player.sendMessage(Format.info("You were teleported to " + staff.getName()));
               }
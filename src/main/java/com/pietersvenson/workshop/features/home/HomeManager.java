@@ -29,29 +29,39 @@ import com.google.common.collect.Maps;
 import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.features.FeatureListener;
 import com.pietersvenson.workshop.features.FeatureManager;
-import com.pietersvenson.workshop.state.Stateful;
+import com.pietersvenson.workshop.state.SqlStateful;
+import com.pietersvenson.workshop.state.StoreBacked;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
 
 import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
-public class HomeManager extends FeatureManager implements Stateful {
+public class HomeManager extends FeatureManager implements StoreBacked, SqlStateful {
 
-  Map<UUID, Location> homes = Maps.newHashMap();
+  private HomeStore store;
 
   public Optional<Location> getHome(@Nonnull final Player player) {
-    return Optional.ofNullable(homes.get(player.getUniqueId()));
+    return store.get(player.getUniqueId());
   }
 
   /**
@@ -62,8 +72,23 @@ public class HomeManager extends FeatureManager implements Stateful {
    * @return
    */
   public Optional<Location> setHome(@Nonnull final Player player, @Nonnull final Location location) {
-    Optional<Location> out = Optional.ofNullable(homes.put(player.getUniqueId(), location));
-    Workshop.getInstance().saveStateSynchronous();
+    Optional<Location> out = store.get(player.getUniqueId());
+    try {
+      store.put(player.getUniqueId(), location);
+    } catch (IOException e) {
+      Workshop.getInstance().getLogger().severe("An error occurred trying to save the home of " + player.getName());
+      e.printStackTrace();
+    }
+    Workshop.getInstance().getState().markStoreDirty(this);
+    Workshop.getInstance().getState().record(this,
+        "put",
+        player.getUniqueId().toString(),
+        location.getWorld().getName(),
+        String.valueOf(location.getX()),
+        String.valueOf(location.getY()),
+        String.valueOf(location.getZ()),
+        String.valueOf(location.getYaw()),
+        String.valueOf(location.getPitch()));
     return out;
   }
 
@@ -73,10 +98,9 @@ public class HomeManager extends FeatureManager implements Stateful {
    * @return the map of player homes
    */
   public Map<String, Location> getHomesByName() {
-    return this.homes.entrySet()
-        .stream()
-        .collect(Collectors.toMap(entry ->
-            Bukkit.getOfflinePlayer(entry.getKey()).getName(), Map.Entry::getValue));
+    Map<String, Location> out = Maps.newHashMapWithExpectedSize(store.size());
+    store.forEach((uuid, location) -> out.put(Bukkit.getOfflinePlayer(uuid).getName(), location));
+    return out;
   }
 
   @Nonnull
@@ -85,27 +109,193 @@ public class HomeManager extends FeatureManager implements Stateful {
     return "homes.yml";
   }
 
+  @Nonnull
+  @Override
+  public File getStoreFile() {
+    return new File(Workshop.getInstance().getDataFolder(), "homes.map");
+  }
+
+  /**
+   * Open the store. If it can't be opened, homes are kept in a temporary store until the server stops,
+   * so that setting and getting homes still works, and the error is still reported.
+   *
+   * @throws IOException if the store couldn't be opened
+   */
+  @Override
+  public void openStore() throws IOException {
+    if (store == null) {
+      Workshop.getInstance().getDataFolder().mkdirs();
+      try {
+        store = HomeStore.open(getStoreFile());
+      } catch (IOException e) {
+        store = HomeStore.openTemporary();
+        throw new IOException("The home store couldn't be opened, so homes will not be saved until it is fixed", e);
+      }
+    }
+  }
+
+  @Override
+  public void flushStore() {
+    store.force();
+    // Writes through the mapping don't reliably update the modification time,
+    // which is what decides whether an exported homes.yml is newer
+    getStoreFile().setLastModified(System.currentTimeMillis());
+  }
+
+  @Override
+  public void closeStore() throws IOException {
+    store.close();
+    getStoreFile().setLastModified(System.currentTimeMillis());
+  }
+
   @Nonnull
   @Override
   public String dumpState() {
+    return snapshotState().get();
+  }
+
+  @Nonnull
+  @Override
+  public Supplier<String> snapshotState() {
     Map<String, Map<String, Object>> serializedState = new TreeMap<>();
-    homes.forEach((uuid, location) -> serializedState.put(uuid.toString(), location.serialize()));
-    DumperOptions dumperOptions = new DumperOptions();
-    dumperOptions.setIndent(2);
-    dumperOptions.setPrettyFlow(true);
-    return new Yaml(dumperOptions).dump(serializedState);
+    store.serialize().forEach((uuid, location) -> serializedState.put(uuid.toString(), location));
+    return () -> {
+      DumperOptions dumperOptions = new DumperOptions();
+      dumperOptions.setIndent(2);
+      dumperOptions.setPrettyFlow(true);
+      return new Yaml(dumperOptions).dump(serializedState);
+    };
   }
 
   @Override
-  public void loadState(String state) throws YAMLException {
-    homes.clear();
+  public void loadState(String state) throws Exception {
+    parseState(state).install();
+  }
+
+  @Nonnull
+  @Override
+  public Installer parseState(String state) throws YAMLException {
+    Map<UUID, Location> parsed = Maps.newHashMap();
     try {
       new Yaml().<Map<String, Map<String, Object>>>load(state).forEach(
           (uuid, location) ->
-              homes.put(UUID.fromString(uuid), Location.deserialize(location)));
+              parsed.put(UUID.fromString(uuid), Location.deserialize(location)));
     } catch (Exception e) {
       throw new YAMLException(e);
     }
+    return () -> store.replaceAll(parsed);
+  }
+
+  @Override
+  public void replay(@Nonnull String operation, @Nonnull List<String> arguments) throws Exception {
+    if (!operation.equals("put")) {
+      throw new IllegalArgumentException("Unknown home operation: " + operation);
+    }
+    World world = Bukkit.getWorld(arguments.get(1));
+    if (world != null) {
+      store.put(UUID.fromString(arguments.get(0)), new Location(world,
+          Double.parseDouble(arguments.get(2)),
+          Double.parseDouble(arguments.get(3)),
+          Double.parseDouble(arguments.get(4)),
+          Float.parseFloat(arguments.get(5)),
+          Float.parseFloat(arguments.get(6))));
+    }
+  }
+
+  @Override
+  public void createTables(@Nonnull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE IF NOT EXISTS homes ("
+          + "uuid TEXT PRIMARY KEY, "
+          + "world TEXT NOT NULL, "
+          + "x REAL NOT NULL, "
+          + "y REAL NOT NULL, "
+          + "z REAL NOT NULL, "
+          + "yaw REAL NOT NULL, "
+          + "pitch REAL NOT NULL)");
+    }
+  }
+
+  @Override
+  public void applyToTables(@Nonnull Connection connection,
+                            @Nonnull String operation,
+                            @Nonnull List<String> arguments) throws SQLException {
+    if (!operation.equals("put")) {
+      throw new IllegalArgumentException("Unknown home operation: " + operation);
+    }
+    try (PreparedStatement statement = connection.prepareStatement(
+        "INSERT OR REPLACE INTO homes (uuid, world, x, y, z, yaw, pitch) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+      statement.setString(1, arguments.get(0));
+      statement.setString(2, arguments.get(1));
+      for (int i = 2; i < 7; i++) {
+        statement.setDouble(i + 1, Double.parseDouble(arguments.get(i)));
+      }
+      statement.executeUpdate();
+    }
+  }
+
+  @Nonnull
+  @Override
+  public TableWriter snapshotTables() {
+    Map<UUID, Map<String, Object>> serialized = store.serialize();
+    return connection -> {
+      try (Statement statement = connection.createStatement()) {
+        statement.executeUpdate("DELETE FROM homes");
+      }
+      try (PreparedStatement statement = connection.prepareStatement(
+          "INSERT INTO homes (uuid, world, x, y, z, yaw, pitch) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+        for (Map.Entry<UUID, Map<String, Object>> home : serialized.entrySet()) {
+          Map<String, Object> location = home.getValue();
+          statement.setString(1, home.getKey().toString());
+          statement.setString(2, (String) location.get("world"));
+          statement.setDouble(3, (Double) location.get("x"));
+          statement.setDouble(4, (Double) location.get("y"));
+          statement.setDouble(5, (Double) location.get("z"));
+          statement.setDouble(6, (Float) location.get("yaw"));
+          statement.setDouble(7, (Float) location.get("pitch"));
+          statement.addBatch();
+        }
+        statement.executeBatch();
+      }
+    };
+  }
+
+  @Nonnull
+  @Override
+  public Installer readTables(@Nonnull Connection connection) throws SQLException {
+    Map<UUID, Map<String, Object>> parsed = Maps.newHashMap();
+    try (Statement statement = connection.createStatement();
+         ResultSet result = statement.executeQuery("SELECT uuid, world, x, y, z, yaw, pitch FROM homes")) {
+      while (result.next()) {
+        Map<String, Object> location = Maps.newHashMap();
+        location.put("world", result.getString("world"));
+        location.put("x", result.getDouble("x"));
+        location.put("y", result.getDouble("y"));
+        location.put("z", result.getDouble("z"));
+        location.put("yaw", result.getDouble("yaw"));
+        location.put("pitch", result.getDouble("pitch"));
+        parsed.put(UUID.fromString(result.getString("uuid")), location);
+      }
+    }
+    // Worlds are looked up on the main thread
+    return () -> {
+      Map<UUID, Location> homes = Maps.newHashMapWithExpectedSize(parsed.size());
+      parsed.forEach((uuid, location) -> {
+        World world = Bukkit.getWorld((String) location.get("world"));
+        if (world == null) {
+          Workshop.getInstance().getLogger().warning("The home of " + uuid
+              + " is in a world which isn't loaded and has been skipped.");
+          return;
+        }
+        homes.put(uuid, new Location(world,
+            (Double) location.get("x"),
+            (Double) location.get("y"),
+            (Double) location.get("z"),
+            ((Double) location.get("yaw")).floatValue(),
+            ((Double) location.get("pitch")).floatValue()));
+      });
+      store.replaceAll(homes);
+    };
   }
 
   @Nonnull
@@ -0,0 +1,416 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.features.home;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Stores homes as fixed-size records in a memory-mapped file, so that setting a home
+ * is a single in-place write and no {@link Location} objects are kept on the heap.
+ *
+ * <p>The file starts with a header holding the record count and the table of interned
+ * world names, followed by the records. Each record holds the player's UUID, the world id,
+ * the coordinates and the rotation. Records are looked up through an off-heap
+ * open-addressing index of slot numbers, which compares against the UUIDs in the records.
+ */
+final class HomeStore {
+
+  private static final int MAGIC = 0x57534853; // "WSHS"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 4096;
+  private static final int COUNT_OFFSET = 8;
+  private static final int WORLD_COUNT_OFFSET = 12;
+  private static final int WORLDS_OFFSET = 16;
+  private static final int RECORD_SIZE = 56;
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int EMPTY = 0;
+
+  private final FileChannel channel;
+  // Replaced on the main thread when the store grows, and forced from the writer thread
+  private volatile MappedByteBuffer buffer;
+  private int capacity;
+  private int count;
+
+  private final List<String> worlds = Lists.newArrayList();
+  private final Map<String, Integer> worldIds = Maps.newHashMap();
+  private int worldsEnd = WORLDS_OFFSET;
+
+  // Each bucket holds the slot of a record plus one, or EMPTY
+  private ByteBuffer index;
+  private int indexMask;
+
+  private HomeStore(@Nonnull FileChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Open a home store, creating it if it doesn't exist.
+   *
+   * @param file the file backing the store
+   * @return the store
+   * @throws IOException if the file couldn't be opened or isn't a home store
+   */
+  @Nonnull
+  static HomeStore open(@Nonnull File file) throws IOException {
+    HomeStore store = new HomeStore(FileChannel.open(file.toPath(),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE));
+    try {
+      if (store.channel.size() < HEADER_SIZE) {
+        store.map(INITIAL_CAPACITY);
+        store.buffer.putInt(0, MAGIC);
+        store.buffer.putInt(4, VERSION);
+        store.buffer.putInt(COUNT_OFFSET, 0);
+        store.buffer.putInt(WORLD_COUNT_OFFSET, 0);
+      } else {
+        int stored = (int) ((store.channel.size() - HEADER_SIZE) / RECORD_SIZE);
+        // A truncated file may have no room for records, and it must still be able to grow
+        store.map(Math.max(INITIAL_CAPACITY, stored));
+        store.readHeader(file, stored);
+      }
+      store.rebuildIndex(store.count);
+    } catch (IOException | RuntimeException e) {
+      store.channel.close();
+      throw e;
+    }
+    return store;
+  }
+
+  /**
+   * Open a store in a temporary file which is deleted on exit, for when the real store can't be opened.
+   *
+   * @return the store
+   * @throws IOException if the temporary file couldn't be created
+   */
+  @Nonnull
+  static HomeStore openTemporary() throws IOException {
+    File file = File.createTempFile("homes", ".map");
+    file.deleteOnExit();
+    return open(file);
+  }
+
+  /**
+   * Map the file with room for a number of records. The previous mapping is forced and released,
+   * under the same lock as {@link #force()}, so the writer thread never forces a released mapping.
+   */
+  private synchronized void map(int capacity) throws IOException {
+    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+    MappedByteBuffer previous = buffer;
+    if (previous != null) {
+      previous.force();
+    }
+    this.capacity = capacity;
+    this.buffer = mapped;
+    if (previous != null) {
+      unmap(previous);
+    }
+  }
+
+  /**
+   * Release a mapping now rather than whenever it is garbage collected.
+   * The buffer must not be used afterwards.
+   */
+  private static void unmap(@Nonnull MappedByteBuffer mapped) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), mapped);
+    } catch (NoSuchMethodException e) {
+      // Java 8 has no invokeCleaner, but its buffers expose their cleaner
+      try {
+        Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(mapped);
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      } catch (ReflectiveOperationException | RuntimeException ignored) {
+        // Released when it is garbage collected instead
+      }
+    } catch (ReflectiveOperationException | RuntimeException ignored) {
+      // Released when it is garbage collected instead
+    }
+  }
+
+  private void readHeader(File file, int stored) throws IOException {
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a home store: " + file.getName());
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("Unsupported home store version " + buffer.getInt(4) + ": " + file.getName());
+    }
+    count = buffer.getInt(COUNT_OFFSET);
+    if (count < 0 || count > stored) {
+      throw new IOException("Corrupt record count in home store: " + file.getName());
+    }
+    int worldCount = buffer.getInt(WORLD_COUNT_OFFSET);
+    for (int i = 0; i < worldCount; i++) {
+      int length = buffer.getShort(worldsEnd);
+      if (length < 0 || worldsEnd + 2 + length > HEADER_SIZE) {
+        throw new IOException("Corrupt world table in home store: " + file.getName());
+      }
+      byte[] name = new byte[length];
+      ByteBuffer view = buffer.duplicate();
+      view.position(worldsEnd + 2);
+      view.get(name);
+      internLoaded(new String(name, StandardCharsets.UTF_8));
+      worldsEnd += 2 + length;
+    }
+  }
+
+  private void internLoaded(String world) {
+    worldIds.put(world, worlds.size());
+    worlds.add(world);
+  }
+
+  private int worldId(@Nonnull String world) {
+    Integer id = worldIds.get(world);
+    if (id != null) {
+      return id;
+    }
+    byte[] name = world.getBytes(StandardCharsets.UTF_8);
+    if (worldsEnd + 2 + name.length > HEADER_SIZE) {
+      throw new IllegalStateException("There are too many worlds to store homes in");
+    }
+    ByteBuffer view = buffer.duplicate();
+    view.position(worldsEnd);
+    view.putShort((short) name.length);
+    view.put(name);
+    worldsEnd += 2 + name.length;
+    internLoaded(world);
+    buffer.putInt(WORLD_COUNT_OFFSET, worlds.size());
+    return worlds.size() - 1;
+  }
+
+  private static int offset(int slot) {
+    return HEADER_SIZE + slot * RECORD_SIZE;
+  }
+
+  private static int hash(long most, long least) {
+    long mixed = (most ^ least) * 0x9E3779B97F4A7C15L;
+    return (int) (mixed ^ (mixed >>> 32));
+  }
+
+  private void rebuildIndex(int expected) {
+    int buckets = Integer.highestOneBit(Math.max(2048, expected * 2 - 1)) << 1;
+    index = ByteBuffer.allocateDirect(buckets * Integer.BYTES);
+    indexMask = buckets - 1;
+    for (int slot = 0; slot < count; slot++) {
+      int offset = offset(slot);
+      int bucket = hash(buffer.getLong(offset), buffer.getLong(offset + 8)) & indexMask;
+      while (index.getInt(bucket * Integer.BYTES) != EMPTY) {
+        bucket = (bucket + 1) & indexMask;
+      }
+      index.putInt(bucket * Integer.BYTES, slot + 1);
+    }
+  }
+
+  /**
+   * Find the bucket which holds the given player, or the empty bucket where they would go.
+   */
+  private int findBucket(long most, long least) {
+    int bucket = hash(most, least) & indexMask;
+    while (true) {
+      int entry = index.getInt(bucket * Integer.BYTES);
+      if (entry == EMPTY) {
+        return bucket;
+      }
+      int offset = offset(entry - 1);
+      if (buffer.getLong(offset) == most && buffer.getLong(offset + 8) == least) {
+        return bucket;
+      }
+      bucket = (bucket + 1) & indexMask;
+    }
+  }
+
+  /**
+   * Get a player's home.
+   *
+   * @param player the uuid of the player
+   * @return the home, or empty if there is none or its world isn't loaded
+   */
+  @Nonnull
+  Optional<Location> get(@Nonnull UUID player) {
+    int entry = index.getInt(findBucket(player.getMostSignificantBits(), player.getLeastSignificantBits()) * Integer.BYTES);
+    if (entry == EMPTY) {
+      return Optional.empty();
+    }
+    return read(entry - 1);
+  }
+
+  private Optional<Location> read(int slot) {
+    int offset = offset(slot);
+    World world = Bukkit.getWorld(worlds.get(buffer.getInt(offset + 16)));
+    if (world == null) {
+      return Optional.empty();
+    }
+    return Optional.of(new Location(world,
+        buffer.getDouble(offset + 20),
+        buffer.getDouble(offset + 28),
+        buffer.getDouble(offset + 36),
+        buffer.getFloat(offset + 44),
+        buffer.getFloat(offset + 48)));
+  }
+
+  /**
+   * Set a player's home, overwriting their previous record in place.
+   *
+   * @param player   the uuid of the player
+   * @param location the home
+   * @throws IOException if the store had to grow and couldn't
+   */
+  void put(@Nonnull UUID player, @Nonnull Location location) throws IOException {
+    int world = worldId(Objects.requireNonNull(location.getWorld(), "A home must have a world").getName());
+    long most = player.getMostSignificantBits();
+    long least = player.getLeastSignificantBits();
+    int bucket = findBucket(most, least);
+    int entry = index.getInt(bucket * Integer.BYTES);
+    int slot;
+    if (entry != EMPTY) {
+      slot = entry - 1;
+    } else {
+      if (count == capacity) {
+        map(Math.max(INITIAL_CAPACITY, capacity * 2));
+      }
+      slot = count;
+      if ((count + 1) * 2 > indexMask + 1) {
+        rebuildIndex(count + 1);
+        bucket = findBucket(most, least);
+      }
+      index.putInt(bucket * Integer.BYTES, slot + 1);
+    }
+    int offset = offset(slot);
+    buffer.putLong(offset, most);
+    buffer.putLong(offset + 8, least);
+    buffer.putInt(offset + 16, world);
+    buffer.putDouble(offset + 20, location.getX());
+    buffer.putDouble(offset + 28, location.getY());
+    buffer.putDouble(offset + 36, location.getZ());
+    buffer.putFloat(offset + 44, location.getYaw());
+    buffer.putFloat(offset + 48, location.getPitch());
+    if (slot == count) {
+      count++;
+      buffer.putInt(COUNT_OFFSET, count);
+    }
+  }
+
+  /**
+   * Replace every home in the store.
+   *
+   * @param homes the new homes
+   * @throws IOException if the store couldn't grow to fit them
+   */
+  void replaceAll(@Nonnull Map<UUID, Location> homes) throws IOException {
+    count = 0;
+    buffer.putInt(COUNT_OFFSET, 0);
+    rebuildIndex(homes.size());
+    for (Map.Entry<UUID, Location> home : homes.entrySet()) {
+      put(home.getKey(), home.getValue());
+    }
+  }
+
+  /**
+   * Visit every home whose world is loaded.
+   *
+   * @param consumer the visitor
+   */
+  void forEach(@Nonnull BiConsumer<UUID, Location> consumer) {
+    for (int slot = 0; slot < count; slot++) {
+      int offset = offset(slot);
+      UUID player = new UUID(buffer.getLong(offset), buffer.getLong(offset + 8));
+      read(slot).ifPresent(location -> consumer.accept(player, location));
+    }
+  }
+
+  /**
+   * Get every home in the same form as {@link Location#serialize()},
+   * including homes in worlds which aren't loaded.
+   *
+   * @return the serialized homes
+   */
+  @Nonnull
+  Map<UUID, Map<String, Object>> serialize() {
+    Map<UUID, Map<String, Object>> out = Maps.newHashMapWithExpectedSize(count);
+    for (int slot = 0; slot < count; slot++) {
+      int offset = offset(slot);
+      Map<String, Object> location = Maps.newHashMap();
+      location.put("world", worlds.get(buffer.getInt(offset + 16)));
+      location.put("x", buffer.getDouble(offset + 20));
+      location.put("y", buffer.getDouble(offset + 28));
+      location.put("z", buffer.getDouble(offset + 36));
+      location.put("yaw", buffer.getFloat(offset + 44));
+      location.put("pitch", buffer.getFloat(offset + 48));
+      out.put(new UUID(buffer.getLong(offset), buffer.getLong(offset + 8)), location);
+    }
+    return out;
+  }
+
+  int size() {
+    return count;
+  }
+
+  /**
+   * Write all changes through to the storage device.
+   * This may be called from any thread.
+   */
+  synchronized void force() {
+    MappedByteBuffer mapped = buffer;
+    if (mapped != null) {
+      mapped.force();
+    }
+  }
+
+  synchronized void close() throws IOException {
+    MappedByteBuffer mapped = buffer;
+    if (mapped != null) {
+      mapped.force();
+      buffer = null;
+      unmap(mapped);
+    }
+    channel.close();
+  }
+
+}
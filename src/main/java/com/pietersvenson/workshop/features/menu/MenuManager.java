@@ -30,6 +30,7 @@ import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.config.Settings;
 import com.pietersvenson.workshop.features.FeatureListener;
 import com.pietersvenson.workshop.features.FeatureManager;
+import com.pietersvenson.workshop.util.Timings;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.HumanEntity;
 import org.bukkit.entity.Player;
@@ -91,9 +92,9 @@ public class MenuManager extends FeatureManager implements Listener {
     this.rightClicks.put(player.getUniqueId(), this.rightClicks.get(player.getUniqueId()) + 1);
     Bukkit.getScheduler().runTaskLater(
         Workshop.getInstance(),
-        () -> {
+        Timings.task("easy menu timeout", () -> {
           this.rightClicks.put(player.getUniqueId(), this.rightClicks.get(player.getUniqueId()) - 1);
-        },
+        }),
         Settings.EASY_MENU_TIMEOUT.getValue());
   }
 
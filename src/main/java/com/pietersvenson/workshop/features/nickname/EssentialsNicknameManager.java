@@ -28,6 +28,7 @@ package com.pietersvenson.workshop.features.nickname;
 import com.earth2me.essentials.Essentials;
 import com.earth2me.essentials.User;
 import com.pietersvenson.workshop.Workshop;
+import com.pietersvenson.workshop.util.Timings;
 import net.ess3.api.events.NickChangeEvent;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
@@ -86,7 +87,7 @@ public class EssentialsNicknameManager extends NicknameManager {
   private void setNicknameLiteral(UUID playerUuid, String nick) {
     User user = essentials.getUser(playerUuid);
     NickChangeEvent nickEvent = new NickChangeEvent(null, user, nick);
-    Bukkit.getScheduler().runTask(Workshop.getInstance(), () -> {
+    Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("essentials nickname", () -> {
       try {
         Bukkit.getServer().getPluginManager().callEvent(nickEvent);
       } catch (IllegalStateException e) {
@@ -95,8 +96,9 @@ public class EssentialsNicknameManager extends NicknameManager {
       if (!nickEvent.isCancelled()) {
         user.setNickname(nick);
         user.setDisplayNick();
+        Workshop.getInstance().getState().getPlayerContexts().setNickname(playerUuid, nick);
       }
-    });
+    }));
   }
 
 }
@@ -26,6 +26,7 @@
 package com.pietersvenson.workshop.features.nickname;
 
 import com.google.common.collect.Maps;
+import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.features.FeatureListener;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
@@ -59,6 +60,7 @@ public class WorkshopNicknameManager extends NicknameManager {
   @Override
   public void setNickname(@Nonnull UUID playerUuid, @Nonnull String nick) throws UnsupportedOperationException {
     nicknames.put(playerUuid, nick);
+    Workshop.getInstance().getState().getPlayerContexts().setNickname(playerUuid, nick);
     Bukkit.getPlayer(playerUuid).setDisplayName("-" + nick);
     Bukkit.getPlayer(playerUuid).setCustomName("-");
   }
@@ -66,6 +68,7 @@ public class WorkshopNicknameManager extends NicknameManager {
   @Override
   void removeNickname(@Nonnull UUID playerUuid) throws UnsupportedOperationException {
     nicknames.remove(playerUuid);
+    Workshop.getInstance().getState().getPlayerContexts().setNickname(playerUuid, null);
     Player player = Bukkit.getPlayer(playerUuid);
     player.setDisplayName(player.getName());
     player.setPlayerListName(player.getName());
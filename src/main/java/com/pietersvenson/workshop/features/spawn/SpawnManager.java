@@ -28,26 +28,32 @@ package com.pietersvenson.workshop.features.spawn;
 import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.features.FeatureListener;
 import com.pietersvenson.workshop.features.FeatureManager;
-import com.pietersvenson.workshop.state.Stateful;
+import com.pietersvenson.workshop.state.BinaryStateful;
+import com.pietersvenson.workshop.state.Journaled;
+import com.pietersvenson.workshop.state.StateInput;
+import com.pietersvenson.workshop.state.StateOutput;
 import org.bukkit.Location;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.function.Supplier;
 
-public class SpawnManager extends FeatureManager implements Stateful {
+public class SpawnManager extends FeatureManager implements Journaled, BinaryStateful {
 
   private Map<String, Object> spawn;
 
   public void setSpawn(@Nonnull Location location) {
     this.spawn = location.serialize();
-    Workshop.getInstance().saveStateSynchronous();
+    Workshop.getInstance().getState().record(this, "set", new Yaml().dump(spawn));
   }
 
   public Optional<Location> getSpawn() {
@@ -63,23 +69,73 @@ public class SpawnManager extends FeatureManager implements Stateful {
   @Nonnull
   @Override
   public String dumpState() {
+    return snapshotState().get();
+  }
+
+  @Nonnull
+  @Override
+  public Supplier<String> snapshotState() {
+    // The spawn map is replaced rather than modified, so it is safe to share
     Map<String, Map<String, Object>> serializedState = new TreeMap<>();
     serializedState.put("spawn", spawn);
-    DumperOptions dumperOptions = new DumperOptions();
-    dumperOptions.setIndent(2);
-    dumperOptions.setPrettyFlow(true);
-    return new Yaml(dumperOptions).dump(serializedState);
+    return () -> {
+      DumperOptions dumperOptions = new DumperOptions();
+      dumperOptions.setIndent(2);
+      dumperOptions.setPrettyFlow(true);
+      return new Yaml(dumperOptions).dump(serializedState);
+    };
+  }
+
+  @Override
+  public void loadState(String state) throws Exception {
+    parseState(state).install();
   }
 
+  @Nonnull
   @Override
-  public void loadState(String state) throws YAMLException {
-    spawn = null;
+  public Installer parseState(String state) throws YAMLException {
+    Map<String, Object> parsed;
     try {
       Map<String, Map<String, Object>> loaded = new Yaml().<Map<String, Map<String, Object>>>load(state);
-      spawn = loaded.get("spawn");
+      parsed = loaded.get("spawn");
     } catch (Exception e) {
       throw new YAMLException(e);
     }
+    return () -> spawn = parsed;
+  }
+
+  @Override
+  public int getBinaryVersion() {
+    return 1;
+  }
+
+  @Nonnull
+  @Override
+  public StateOutput.Encoder snapshotBinaryState() {
+    // The spawn map is replaced rather than modified, so it is safe to share
+    Map<String, Object> captured = spawn;
+    return out -> {
+      out.writeBoolean(captured != null);
+      if (captured != null) {
+        out.writeLocation(captured);
+      }
+    };
+  }
+
+  @Nonnull
+  @Override
+  public Installer readState(@Nonnull StateInput in, int version) throws IOException {
+    Map<String, Object> parsed = in.readBoolean() ? in.readLocation() : null;
+    return () -> spawn = parsed;
+  }
+
+  @Override
+  public void replay(@Nonnull String operation, @Nonnull List<String> arguments) throws Exception {
+    if (operation.equals("set")) {
+      spawn = new Yaml().<Map<String, Object>>load(arguments.get(0));
+    } else {
+      throw new IllegalArgumentException("Unknown spawn operation: " + operation);
+    }
   }
 
   @Nonnull
@@ -25,10 +25,10 @@
 
 package com.pietersvenson.workshop.features.tectonic;
 
+import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.config.Settings;
 import com.pietersvenson.workshop.features.FeatureEventHandler;
 import com.pietersvenson.workshop.features.FeatureListener;
-import com.pietersvenson.workshop.permission.Permissions;
 import com.pietersvenson.workshop.util.Format;
 import org.bukkit.event.block.BlockBreakEvent;
 
@@ -40,7 +40,7 @@ public class TectonicListener extends FeatureListener {
 
   @FeatureEventHandler
   public void onBreakBlock(BlockBreakEvent blockBreakEvent) {
-    if (!blockBreakEvent.getPlayer().hasPermission(Permissions.STAFF)
+    if (!Workshop.getInstance().getState().getPlayerContexts().isStaff(blockBreakEvent.getPlayer())
         && blockBreakEvent.getBlock().getY() <= 0) {
       blockBreakEvent.setCancelled(true);
       blockBreakEvent.getPlayer().sendMessage(Format.error("You may not break blocks at level 0"));
@@ -30,6 +30,7 @@ import com.google.common.collect.Table;
 import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.config.Settings;
 import com.pietersvenson.workshop.features.DeafFeatureManager;
+import com.pietersvenson.workshop.util.Timings;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
@@ -75,13 +76,13 @@ public class TeleportManager extends DeafFeatureManager {
     if (requesterPlayer == null || destinationPlayer == null) {
       return false;
     }
-    Bukkit.getScheduler().runTask(Workshop.getInstance(), () -> {
+    Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("teleport request", () -> {
       try {
         requesterPlayer.teleport(destinationPlayer.getLocation());
       } catch (Exception e) {
         e.printStackTrace();
       }
-    });
+    }));
     requests.remove(requester, destination);
     return true;
   }
@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.permission;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.pietersvenson.workshop.Workshop;
+import com.pietersvenson.workshop.state.Stateful;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Remembers whether each player who has joined had the {@link Permissions#STAFF} permission at the time.
+ * Permissions can't be checked before a player has logged in, so this is what lets
+ * staff through while logins are restricted to a class. Operators are always known as staff.
+ */
+public class StaffRoster implements Stateful {
+
+  private final Map<UUID, Boolean> players = Maps.newConcurrentMap();
+  // Read from the main thread, because the server's operator list isn't safe to read from elsewhere
+  private volatile Set<UUID> operators = Collections.emptySet();
+
+  /**
+   * Check whether a player is known to be staff. This may be called from any thread.
+   *
+   * @param player the uuid of the player
+   * @return true if they are staff
+   */
+  public boolean isStaff(@Nonnull UUID player) {
+    return players.getOrDefault(player, false) || operators.contains(player);
+  }
+
+  /**
+   * Check whether a player is known not to be staff, because they weren't when they last joined.
+   * Players who never joined may have been given the permission, so they aren't.
+   * This may be called from any thread.
+   *
+   * @param player the uuid of the player
+   * @return true if they are known not to be staff
+   */
+  public boolean isKnownNonStaff(@Nonnull UUID player) {
+    return !players.getOrDefault(player, true) && !operators.contains(player);
+  }
+
+  /**
+   * Remember whether a player which has logged in is staff now.
+   *
+   * @param player the player
+   */
+  public void update(@Nonnull Player player) {
+    Boolean previous = players.put(player.getUniqueId(), player.hasPermission(Permissions.STAFF));
+    if (!Objects.equals(previous, players.get(player.getUniqueId()))) {
+      Workshop.getInstance().getState().markDirty(this);
+    }
+  }
+
+  /**
+   * Take a new snapshot of the server's operators.
+   * This must be called from the main thread.
+   */
+  public void refreshOperators() {
+    operators = Bukkit.getOperators().stream()
+        .map(OfflinePlayer::getUniqueId)
+        .collect(ImmutableSet.toImmutableSet());
+  }
+
+  @Nonnull
+  @Override
+  public String getFileName() {
+    return "staff.yml";
+  }
+
+  @Nonnull
+  @Override
+  public String dumpState() {
+    return snapshotState().get();
+  }
+
+  @Nonnull
+  @Override
+  public Supplier<String> snapshotState() {
+    Map<String, Boolean> serialized = new TreeMap<>();
+    players.forEach((uuid, staff) -> serialized.put(uuid.toString(), staff));
+    return () -> {
+      DumperOptions dumperOptions = new DumperOptions();
+      dumperOptions.setIndent(2);
+      dumperOptions.setPrettyFlow(true);
+      return new Yaml(dumperOptions).dump(serialized);
+    };
+  }
+
+  @Override
+  public void loadState(String state) throws Exception {
+    parseState(state).install();
+  }
+
+  @Nonnull
+  @Override
+  public Installer parseState(String state) throws YAMLException {
+    Map<UUID, Boolean> parsed = Maps.newHashMap();
+    try {
+      Object loaded = new Yaml().load(state);
+      if (loaded instanceof List) {
+        // Earlier rosters only listed the staff
+        ((List<?>) loaded).forEach(uuid -> parsed.put(UUID.fromString(uuid.toString()), true));
+      } else if (loaded instanceof Map) {
+        ((Map<?, ?>) loaded).forEach((uuid, staff) ->
+            parsed.put(UUID.fromString(uuid.toString()), Boolean.TRUE.equals(staff)));
+      } else if (loaded != null) {
+        throw new IllegalArgumentException("The staff roster must be a map of uuids to booleans");
+      }
+    } catch (Exception e) {
+      throw new YAMLException(e);
+    }
+    return () -> {
+      players.clear();
+      players.putAll(parsed);
+      refreshOperators();
+    };
+  }
+
+}
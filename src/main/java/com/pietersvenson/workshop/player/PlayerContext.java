@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.player;
+
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * The facts about a player which event handlers ask for on every event, kept up to date by {@link PlayerContexts}
+ * so that each one is a field read. It is written on the main thread, or before login while prefetching,
+ * and may be read from any thread.
+ */
+public final class PlayerContext {
+
+  @Getter
+  private final UUID playerUuid;
+  final long created = System.currentTimeMillis();
+  @Getter
+  volatile boolean staff;
+  @Getter
+  volatile boolean frozen;
+  @Getter
+  volatile boolean registering;
+  @Getter
+  volatile boolean participant;
+  volatile String nickname;
+  // Nicknames are only looked up on the main thread, so a prefetched context doesn't have one yet
+  volatile boolean nicknameKnown;
+
+  PlayerContext(@Nonnull UUID playerUuid) {
+    this.playerUuid = playerUuid;
+  }
+
+  /**
+   * Get the nickname of the player, as it was when it was last looked up or changed.
+   *
+   * @return the nickname, if there is one
+   */
+  @Nonnull
+  public Optional<String> getNickname() {
+    return Optional.ofNullable(nickname);
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.player;
+
+import com.pietersvenson.workshop.Workshop;
+import com.pietersvenson.workshop.features.FeatureEventHandler;
+import com.pietersvenson.workshop.features.FeatureListener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+public class PlayerContextListener extends FeatureListener {
+
+  protected PlayerContextListener() {
+    super(null);
+  }
+
+  @FeatureEventHandler
+  public void onPlayerPreLogin(AsyncPlayerPreLoginEvent playerPreLoginEvent) {
+    if (playerPreLoginEvent.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+      Workshop.getInstance().getState().getPlayerContexts().prefetch(playerPreLoginEvent.getUniqueId());
+    }
+  }
+
+  @FeatureEventHandler
+  public void onPlayerJoin(PlayerJoinEvent playerJoinEvent) {
+    Workshop.getInstance().getState().getPlayerContexts().refresh(playerJoinEvent.getPlayer());
+  }
+
+  @FeatureEventHandler
+  public void onPlayerQuit(PlayerQuitEvent playerQuitEvent) {
+    Workshop.getInstance().getState().getPlayerContexts().remove(playerQuitEvent.getPlayer().getUniqueId());
+  }
+
+}
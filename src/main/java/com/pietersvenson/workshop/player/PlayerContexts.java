@@ -0,0 +1,232 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.player;
+
+import com.google.common.collect.Maps;
+import com.pietersvenson.workshop.Workshop;
+import com.pietersvenson.workshop.config.Settings;
+import com.pietersvenson.workshop.features.FeatureListener;
+import com.pietersvenson.workshop.features.FeatureManager;
+import com.pietersvenson.workshop.features.classes.Classroom;
+import com.pietersvenson.workshop.permission.Permissions;
+import com.pietersvenson.workshop.state.WorkshopState;
+import com.pietersvenson.workshop.util.Timings;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link PlayerContext} of every online player. Contexts are prefetched before login
+ * and refreshed on join, when a player is frozen or starts or finishes registering,
+ * when the classroom in session or its roster changes, and periodically for permission changes.
+ * The staff among them are also kept as a roster of online staff.
+ */
+public class PlayerContexts extends FeatureManager {
+
+  // Prefetched contexts of players who never joined, like when another plugin turned them away
+  private static final long PREFETCH_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private final Map<UUID, PlayerContext> contexts = Maps.newConcurrentMap();
+  // The online players whose contexts say they are staff
+  private final Map<UUID, Player> onlineStaff = Maps.newConcurrentMap();
+  private BukkitTask refreshTask;
+  private long refreshInterval;
+
+  /**
+   * Start the periodic refresh, or restart it if the configured interval changed.
+   * This is called once the config is loaded, and again on every reload.
+   * This must be called from the main thread.
+   */
+  public void scheduleRefresh() {
+    long interval = Math.max(1, Settings.PLAYER_CONTEXT_REFRESH_TICKS.getValue());
+    if (refreshTask != null) {
+      if (interval == refreshInterval) {
+        return;
+      }
+      refreshTask.cancel();
+    }
+    refreshInterval = interval;
+    refreshTask = Bukkit.getScheduler().runTaskTimer(Workshop.getInstance(),
+        Timings.task("player contexts", this::refreshAll),
+        interval,
+        interval);
+  }
+
+  /**
+   * Get the context of an online player, building it now if it wasn't yet.
+   *
+   * @param player the player
+   * @return the context
+   */
+  @Nonnull
+  public PlayerContext get(@Nonnull Player player) {
+    PlayerContext context = contexts.get(player.getUniqueId());
+    if (context != null) {
+      return context;
+    }
+    if (Bukkit.isPrimaryThread()) {
+      return refresh(player);
+    }
+    // Everything else is only safe to read on the main thread, so it is filled in there
+    PlayerContext partial = new PlayerContext(player.getUniqueId());
+    partial.staff = player.hasPermission(Permissions.STAFF);
+    Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("player contexts", () -> {
+      if (player.isOnline()) {
+        refresh(player);
+      }
+    }));
+    return partial;
+  }
+
+  /**
+   * Check whether an entity is staff, using the context if it is a player.
+   *
+   * @param entity the entity
+   * @return true if the entity has the staff permission
+   */
+  public boolean isStaff(@Nonnull Entity entity) {
+    return entity instanceof Player
+        ? get((Player) entity).isStaff()
+        : entity.hasPermission(Permissions.STAFF);
+  }
+
+  /**
+   * Get the online players who are staff, as of the last refresh of their contexts.
+   * The collection is a live view and may be iterated from any thread.
+   *
+   * @return the online staff
+   */
+  @Nonnull
+  public Collection<Player> getOnlineStaff() {
+    return Collections.unmodifiableCollection(onlineStaff.values());
+  }
+
+  /**
+   * Build the context of a player who is logging in, from the state which may be read from any thread.
+   * Anything else, including the nickname, is filled in when they join.
+   *
+   * @param playerUuid the uuid of the player
+   */
+  void prefetch(@Nonnull UUID playerUuid) {
+    WorkshopState state = Workshop.getInstance().getState();
+    PlayerContext context = new PlayerContext(playerUuid);
+    context.staff = state.getStaffRoster().isStaff(playerUuid);
+    contexts.put(playerUuid, context);
+  }
+
+  /**
+   * Work out the context of an online player again.
+   * This must be called from the main thread.
+   *
+   * @param player the player
+   * @return the context
+   */
+  @Nonnull
+  public PlayerContext refresh(@Nonnull Player player) {
+    PlayerContext context = contexts.get(player.getUniqueId());
+    if (context == null) {
+      context = new PlayerContext(player.getUniqueId());
+      contexts.put(player.getUniqueId(), context);
+    }
+    if (!context.nicknameKnown) {
+      context.nickname = lookupNickname(player.getUniqueId());
+      context.nicknameKnown = true;
+    }
+    WorkshopState state = Workshop.getInstance().getState();
+    Optional<Classroom> inSession = state.getClassroomManager().getInSession();
+    boolean staff = player.hasPermission(Permissions.STAFF);
+    if (staff != context.staff) {
+      state.getStaffRoster().update(player);
+    }
+    context.staff = staff;
+    if (staff) {
+      onlineStaff.put(player.getUniqueId(), player);
+    } else {
+      onlineStaff.remove(player.getUniqueId());
+    }
+    context.frozen = state.getFreezeManager().isFrozen(player);
+    context.registering = inSession.map(classroom -> classroom.isRegistering(player.getUniqueId())).orElse(false);
+    context.participant = inSession.flatMap(classroom -> classroom.getParticipant(player.getUniqueId())).isPresent();
+    return context;
+  }
+
+  /**
+   * Work out the context of every online player again, and forget prefetched ones which were never used.
+   * This must be called from the main thread.
+   */
+  public void refreshAll() {
+    Workshop.getInstance().getState().getStaffRoster().refreshOperators();
+    long now = System.currentTimeMillis();
+    contexts.values().removeIf(context -> now - context.created > PREFETCH_EXPIRY_MILLIS
+        && Bukkit.getPlayer(context.getPlayerUuid()) == null);
+    Bukkit.getOnlinePlayers().forEach(this::refresh);
+  }
+
+  /**
+   * Record a player's new nickname, because looking it up may be slow.
+   *
+   * @param playerUuid the uuid of the player
+   * @param nickname   the nickname, or null if it was removed
+   */
+  public void setNickname(@Nonnull UUID playerUuid, @Nullable String nickname) {
+    PlayerContext context = contexts.get(playerUuid);
+    if (context != null) {
+      context.nickname = nickname;
+      context.nicknameKnown = true;
+    }
+  }
+
+  void remove(@Nonnull UUID playerUuid) {
+    contexts.remove(playerUuid);
+    onlineStaff.remove(playerUuid);
+  }
+
+  @Nullable
+  private static String lookupNickname(@Nonnull UUID playerUuid) {
+    try {
+      return Workshop.getInstance().getState().getNicknameManager().getNickname(playerUuid).orElse(null);
+    } catch (UnsupportedOperationException e) {
+      return null;
+    }
+  }
+
+  @Nonnull
+  @Override
+  protected Collection<FeatureListener> getListeners() {
+    return Collections.singleton(new PlayerContextListener());
+  }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+
+/**
+ * The compact format for {@link BinaryStateful} objects.
+ * Each file starts with a magic number, the version of this container format
+ * and the layout version of the stateful object, followed by its state.
+ */
+final class BinaryStateCodec implements StateCodec {
+
+  private static final int MAGIC = 0x57535354; // "WSST"
+  private static final int FORMAT_VERSION = 1;
+  private static final String EXTENSION = ".dat";
+
+  @Override
+  public boolean supports(@Nonnull Stateful stateful) {
+    return stateful instanceof BinaryStateful;
+  }
+
+  @Nonnull
+  @Override
+  public String getFileName(@Nonnull Stateful stateful) {
+    String name = stateful.getFileName();
+    int dot = name.lastIndexOf('.');
+    return (dot < 0 ? name : name.substring(0, dot)) + EXTENSION;
+  }
+
+  @Nonnull
+  @Override
+  public Supplier<byte[]> snapshot(@Nonnull Stateful stateful) {
+    BinaryStateful binary = (BinaryStateful) stateful;
+    int version = binary.getBinaryVersion();
+    StateOutput.Encoder state = binary.snapshotBinaryState();
+    return () -> StateOutput.encode(out -> {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(version);
+      state.write(out);
+    });
+  }
+
+  @Nonnull
+  @Override
+  public Stateful.Installer parse(@Nonnull Stateful stateful, @Nonnull File file) throws Exception {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      buffer = ByteBuffer.allocate((int) channel.size());
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new IOException("Unexpected end of file: " + file.getName());
+        }
+      }
+    }
+    buffer.flip();
+    StateInput in = new StateInput(buffer);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a Workshop state file: " + file.getName());
+    }
+    int formatVersion = in.readInt();
+    if (formatVersion != FORMAT_VERSION) {
+      throw new IOException("Unsupported state file version " + formatVersion + ": " + file.getName());
+    }
+    return ((BinaryStateful) stateful).readState(in, in.readInt());
+  }
+
+}
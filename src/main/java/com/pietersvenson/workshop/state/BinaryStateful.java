@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * A {@link Stateful} which can also be saved in the compact binary format.
+ * As with {@link Stateful#snapshotState()}, the state is captured on the main thread
+ * and encoded off of it.
+ */
+public interface BinaryStateful extends Stateful {
+
+  /**
+   * Get the version of the binary layout written by {@link #snapshotBinaryState()}.
+   * Increment this whenever the layout changes.
+   *
+   * @return the layout version
+   */
+  int getBinaryVersion();
+
+  /**
+   * Capture the entire state so it can be encoded off of the main thread.
+   * The returned encoder may be called from any thread, so it must only read
+   * from data that was copied when this method was called.
+   *
+   * @return the encoder of the captured state
+   */
+  @Nonnull
+  StateOutput.Encoder snapshotBinaryState();
+
+  /**
+   * Read the entire state without modifying this object, so that it may be done off of the main thread.
+   *
+   * @param in      the input
+   * @param version the layout version the state was written with
+   * @return the installer which replaces the current state with the state which was read
+   * @throws IOException if the state could not be read
+   */
+  @Nonnull
+  Installer readState(@Nonnull StateInput in, int version) throws IOException;
+
+}
@@ -0,0 +1,270 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import com.google.common.collect.Lists;
+import com.pietersvenson.workshop.Workshop;
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of mutations to {@link Journaled} state.
+ * Each record is written as its payload length, a CRC32 of the payload, and the payload,
+ * so a record torn by a crash is detected and everything from it onward is ignored.
+ * That tail is cut off before the first append, so new records are never written after it.
+ * All writing methods must be called from the state writer thread.
+ */
+final class Journal {
+
+  private final File file;
+  private FileChannel channel;
+
+  Journal(@Nonnull File file) {
+    this.file = file;
+  }
+
+  /**
+   * Encode a record. This is done by the caller so the arguments are
+   * captured at the time of the mutation.
+   *
+   * @param fileName  the file name of the {@link Stateful} this record belongs to
+   * @param operation the operation
+   * @param arguments the arguments of the operation
+   * @return the encoded record
+   */
+  static byte[] encode(@Nonnull String fileName, @Nonnull String operation, @Nonnull String[] arguments) {
+    try {
+      ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+      DataOutputStream payload = new DataOutputStream(payloadBytes);
+      writeString(payload, fileName);
+      writeString(payload, operation);
+      payload.writeInt(arguments.length);
+      for (String argument : arguments) {
+        writeString(payload, argument);
+      }
+      byte[] body = payloadBytes.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(body);
+      ByteBuffer record = ByteBuffer.allocate(8 + body.length);
+      record.putInt(body.length);
+      record.putInt((int) crc.getValue());
+      record.put(body);
+      return record.array();
+    } catch (IOException e) {
+      // Writing to a byte array can't fail
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Append an encoded record and force it to disk.
+   *
+   * @param record the record from {@link #encode(String, String, String[])}
+   * @return the size of the journal after appending
+   * @throws IOException if the record could not be written
+   */
+  long append(@Nonnull byte[] record) throws IOException {
+    if (channel == null) {
+      long intact = read().getIntactLength();
+      channel = FileChannel.open(file.toPath(),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND);
+      if (channel.size() > intact) {
+        Workshop.getInstance().getLogger().warning("Discarding " + (channel.size() - intact)
+            + " bytes of damaged records from the end of the state journal");
+        channel.truncate(intact);
+        channel.force(true);
+      }
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(record);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    channel.force(false);
+    return channel.size();
+  }
+
+  /**
+   * Discard every record. Only call this once every record has been folded into a snapshot.
+   *
+   * @throws IOException if the journal could not be truncated
+   */
+  void truncate() throws IOException {
+    if (channel != null) {
+      channel.truncate(0);
+      channel.force(true);
+    } else if (file.exists()) {
+      try (FileChannel truncating = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+        truncating.truncate(0);
+        truncating.force(true);
+      }
+    }
+  }
+
+  /**
+   * Close the underlying file, if it is open.
+   */
+  void close() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      channel = null;
+    }
+  }
+
+  /**
+   * Get the current size of the journal on disk.
+   *
+   * @return the size in bytes
+   */
+  long size() {
+    return file.length();
+  }
+
+  /**
+   * Read every intact record in the journal, in the order they were written.
+   *
+   * @return the records and where the intact records end
+   * @throws IOException if the journal could not be read
+   */
+  @Nonnull
+  Contents read() throws IOException {
+    if (!file.exists()) {
+      return new Contents(Collections.emptyList(), 0, 0);
+    }
+    long size = file.length();
+    List<Entry> out = Lists.newArrayList();
+    long intact = 0;
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+      while (true) {
+        int length;
+        int checksum;
+        byte[] body;
+        try {
+          length = in.readInt();
+          checksum = in.readInt();
+          if (length < 0 || length > file.length()) {
+            break;
+          }
+          body = new byte[length];
+          in.readFully(body);
+        } catch (EOFException e) {
+          break;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+        DataInputStream payload = new DataInputStream(new ByteArrayInputStream(body));
+        String fileName = readString(payload);
+        String operation = readString(payload);
+        int count = payload.readInt();
+        List<String> arguments = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+          arguments.add(readString(payload));
+        }
+        out.add(new Entry(fileName, operation, arguments));
+        intact += 8 + length;
+      }
+    }
+    return new Contents(out, intact, size);
+  }
+
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The intact records of the journal.
+   */
+  @Getter
+  static final class Contents {
+    private final List<Entry> entries;
+    // The offset just past the last intact record
+    private final long intactLength;
+    private final long length;
+
+    Contents(List<Entry> entries, long intactLength, long length) {
+      this.entries = entries;
+      this.intactLength = intactLength;
+      this.length = length;
+    }
+
+    /**
+     * Check whether anything after the intact records was dropped.
+     *
+     * @return true if the journal ends with a damaged record
+     */
+    boolean isTorn() {
+      return length > intactLength;
+    }
+  }
+
+  /**
+   * A single record read back from the journal.
+   */
+  @Getter
+  static final class Entry {
+    private final String fileName;
+    private final String operation;
+    private final List<String> arguments;
+
+    Entry(String fileName, String operation, List<String> arguments) {
+      this.fileName = fileName;
+      this.operation = operation;
+      this.arguments = arguments;
+    }
+  }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * A {@link Stateful} whose individual mutations are appended to the state journal
+ * instead of rewriting the whole state file each time.
+ * Every recorded operation must be idempotent (e.g. "put" or "remove", not "toggle")
+ * because records may be replayed on top of a snapshot which already contains them.
+ */
+public interface Journaled extends Stateful {
+
+  /**
+   * Apply a mutation which was previously recorded with
+   * {@link WorkshopState#record(Journaled, String, String...)}.
+   * This must not record the mutation again or mark anything dirty.
+   *
+   * @param operation the recorded operation
+   * @param arguments the recorded arguments
+   * @throws Exception if the record could not be applied
+   */
+  void replay(@Nonnull String operation, @Nonnull List<String> arguments) throws Exception;
+
+}
@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import javax.annotation.Nonnull;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * A {@link Journaled} stateful object which can be kept in the tables of an SQL {@link StorageBackend}.
+ * All of these methods except {@link #snapshotTables()} are called on the storage thread,
+ * within a transaction which is committed by the caller.
+ */
+public interface SqlStateful extends Journaled {
+
+  /**
+   * Create the tables and indexes this object is stored in, if they don't exist.
+   *
+   * @param connection the connection
+   * @throws SQLException if they couldn't be created
+   */
+  void createTables(@Nonnull Connection connection) throws SQLException;
+
+  /**
+   * Apply a recorded mutation to the tables.
+   *
+   * @param connection the connection
+   * @param operation  the recorded operation
+   * @param arguments  the recorded arguments
+   * @throws SQLException if it couldn't be applied
+   */
+  void applyToTables(@Nonnull Connection connection,
+                     @Nonnull String operation,
+                     @Nonnull List<String> arguments) throws SQLException;
+
+  /**
+   * Capture the whole state on the main thread.
+   *
+   * @return a writer which replaces the contents of the tables with the captured state
+   */
+  @Nonnull
+  TableWriter snapshotTables();
+
+  /**
+   * Read the whole state from the tables without modifying this object.
+   *
+   * @param connection the connection
+   * @return the installer of the state which was read
+   * @throws SQLException if it couldn't be read
+   */
+  @Nonnull
+  Installer readTables(@Nonnull Connection connection) throws SQLException;
+
+  /**
+   * Replaces the contents of tables with captured state.
+   */
+  @FunctionalInterface
+  interface TableWriter {
+
+    void write(@Nonnull Connection connection) throws SQLException;
+
+  }
+
+}
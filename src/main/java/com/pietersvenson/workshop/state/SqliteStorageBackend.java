@@ -0,0 +1,241 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import com.google.common.collect.Lists;
+import com.pietersvenson.workshop.Workshop;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Stores {@link SqlStateful} objects in an SQLite database file, using the driver which is bundled with the server.
+ * The connection is only ever used from the storage thread. Queued writes are drained together
+ * and committed as one transaction, and if that fails, they are retried one transaction each
+ * so that a single bad write doesn't take the others with it.
+ */
+final class SqliteStorageBackend implements StorageBackend {
+
+  private final File file;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "Workshop Storage");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Queue<Write> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+  private Connection connection;
+
+  SqliteStorageBackend(@Nonnull File file) {
+    this.file = file;
+  }
+
+  @Override
+  public void open(@Nonnull Collection<Stateful> statefuls) throws Exception {
+    try {
+      CompletableFuture.runAsync(() -> {
+        try {
+          connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+          try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("PRAGMA foreign_keys=ON");
+          }
+          connection.setAutoCommit(false);
+          try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS workshop_state (file_name TEXT PRIMARY KEY)");
+          }
+          for (Stateful stateful : statefuls) {
+            if (supports(stateful)) {
+              ((SqlStateful) stateful).createTables(connection);
+            }
+          }
+          connection.commit();
+        } catch (SQLException e) {
+          throw new CompletionException(e);
+        }
+      }, executor).join();
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+  }
+
+  @Override
+  public boolean supports(@Nonnull Stateful stateful) {
+    return stateful instanceof SqlStateful;
+  }
+
+  @Override
+  public boolean contains(@Nonnull Stateful stateful) {
+    return query(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(
+          "SELECT 1 FROM workshop_state WHERE file_name = ?")) {
+        statement.setString(1, stateful.getFileName());
+        try (ResultSet result = statement.executeQuery()) {
+          return result.next();
+        }
+      }
+    }).join();
+  }
+
+  @Nonnull
+  @Override
+  public CompletableFuture<Stateful.Installer> read(@Nonnull Stateful stateful) {
+    return query(((SqlStateful) stateful)::readTables);
+  }
+
+  @Override
+  public void record(@Nonnull Journaled stateful, @Nonnull String operation, @Nonnull Supplier<String[]> arguments) {
+    enqueue(connection -> ((SqlStateful) stateful).applyToTables(connection, operation, Arrays.asList(arguments.get())));
+  }
+
+  @Override
+  public void replace(@Nonnull Stateful stateful) {
+    SqlStateful.TableWriter writer = ((SqlStateful) stateful).snapshotTables();
+    enqueue(connection -> {
+      writer.write(connection);
+      try (PreparedStatement statement = connection.prepareStatement(
+          "INSERT OR IGNORE INTO workshop_state (file_name) VALUES (?)")) {
+        statement.setString(1, stateful.getFileName());
+        statement.executeUpdate();
+      }
+    });
+  }
+
+  @Nonnull
+  @Override
+  public <T> CompletableFuture<T> query(@Nonnull Query<T> query) {
+    try {
+      return CompletableFuture.supplyAsync(() -> {
+        // Make sure we read our own writes
+        drain();
+        try {
+          T out = query.run(connection);
+          connection.commit();
+          return out;
+        } catch (SQLException e) {
+          throw new CompletionException(e);
+        }
+      }, executor);
+    } catch (RejectedExecutionException e) {
+      CompletableFuture<T> out = new CompletableFuture<>();
+      out.completeExceptionally(e);
+      return out;
+    }
+  }
+
+  private void enqueue(@Nonnull Write write) {
+    pending.add(write);
+    if (drainScheduled.compareAndSet(false, true)) {
+      try {
+        executor.execute(this::drain);
+      } catch (RejectedExecutionException e) {
+        Workshop.getInstance().getLogger().severe("A change was made after storage was closed and could not be saved.");
+      }
+    }
+  }
+
+  private void drain() {
+    drainScheduled.set(false);
+    List<Write> batch = Lists.newArrayList();
+    for (Write write = pending.poll(); write != null; write = pending.poll()) {
+      batch.add(write);
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      for (Write write : batch) {
+        write.run(connection);
+      }
+      connection.commit();
+    } catch (SQLException | RuntimeException batchException) {
+      rollback();
+      for (Write write : batch) {
+        try {
+          write.run(connection);
+          connection.commit();
+        } catch (SQLException | RuntimeException e) {
+          rollback();
+          Workshop.getInstance().getLogger().severe("An error occurred trying to save a change to " + file.getName());
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+  private void rollback() {
+    try {
+      connection.rollback();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public boolean close(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+    try {
+      executor.execute(() -> {
+        drain();
+        try {
+          connection.close();
+        } catch (SQLException e) {
+          e.printStackTrace();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Already closed
+    }
+    executor.shutdown();
+    return executor.awaitTermination(timeout, unit);
+  }
+
+  @FunctionalInterface
+  private interface Write {
+
+    void run(@Nonnull Connection connection) throws SQLException;
+
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.function.Supplier;
+
+/**
+ * A format in which {@link Stateful} objects can be stored on disk.
+ */
+interface StateCodec {
+
+  /**
+   * Check whether this format can store the given stateful object.
+   *
+   * @param stateful the stateful object
+   * @return true if it is supported
+   */
+  boolean supports(@Nonnull Stateful stateful);
+
+  /**
+   * Get the name of the file the stateful object is stored in with this format.
+   *
+   * @param stateful the stateful object
+   * @return the file name
+   */
+  @Nonnull
+  String getFileName(@Nonnull Stateful stateful);
+
+  /**
+   * Capture the state on the main thread. The returned supplier does the
+   * remaining encoding and may be called from any thread.
+   *
+   * @param stateful the stateful object
+   * @return a supplier of the encoded state
+   */
+  @Nonnull
+  Supplier<byte[]> snapshot(@Nonnull Stateful stateful);
+
+  /**
+   * Read and parse the state from a file in this format. This may be called from any thread.
+   *
+   * @param stateful the stateful object
+   * @param file     the file
+   * @return the installer of the parsed state, to be run on the main thread
+   * @throws Exception if the state could not be read
+   */
+  @Nonnull
+  Stateful.Installer parse(@Nonnull Stateful stateful, @Nonnull File file) throws Exception;
+
+}
@@ -0,0 +1,145 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.bukkit.Location;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The reading half of the binary state format, which reads directly from a buffer.
+ */
+public final class StateInput {
+
+  private final ByteBuffer buffer;
+  private final List<String> worlds = Lists.newArrayList();
+
+  StateInput(@Nonnull ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  public int readInt() throws IOException {
+    try {
+      return buffer.getInt();
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Unexpected end of state data", e);
+    }
+  }
+
+  public long readLong() throws IOException {
+    try {
+      return buffer.getLong();
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Unexpected end of state data", e);
+    }
+  }
+
+  public boolean readBoolean() throws IOException {
+    try {
+      return buffer.get() != 0;
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Unexpected end of state data", e);
+    }
+  }
+
+  /**
+   * Read a length-prefixed UTF-8 string.
+   *
+   * @return the string
+   * @throws IOException if the data is truncated or malformed
+   */
+  @Nonnull
+  public String readString() throws IOException {
+    int length = readInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IOException("Invalid string length in state data: " + length);
+    }
+    byte[] encoded = new byte[length];
+    buffer.get(encoded);
+    return new String(encoded, StandardCharsets.UTF_8);
+  }
+
+  @Nonnull
+  public UUID readUuid() throws IOException {
+    return new UUID(readLong(), readLong());
+  }
+
+  @Nonnull
+  public Instant readInstant() throws IOException {
+    return Instant.ofEpochMilli(readLong());
+  }
+
+  /**
+   * Read a world name written by {@link StateOutput#writeWorld(String)}.
+   *
+   * @return the world name
+   * @throws IOException if the data is truncated or malformed
+   */
+  @Nonnull
+  public String readWorld() throws IOException {
+    int index = readInt();
+    if (index == worlds.size()) {
+      worlds.add(readString());
+    } else if (index < 0 || index > worlds.size()) {
+      throw new IOException("Invalid world index in state data: " + index);
+    }
+    return worlds.get(index);
+  }
+
+  /**
+   * Read a location written by {@link StateOutput#writeLocation(Location)}, in the form of {@link Location#serialize()}.
+   * Parsing happens off of the main thread, so the world is left as a name for the installer to resolve,
+   * and a location in a world which isn't loaded is kept just like when it is loaded from YAML.
+   *
+   * @return the serialized location
+   * @throws IOException if the data is truncated or malformed
+   */
+  @Nonnull
+  public Map<String, Object> readLocation() throws IOException {
+    Map<String, Object> out = Maps.newHashMap();
+    out.put("world", readWorld());
+    try {
+      out.put("x", buffer.getDouble());
+      out.put("y", buffer.getDouble());
+      out.put("z", buffer.getDouble());
+      out.put("yaw", buffer.getFloat());
+      out.put("pitch", buffer.getFloat());
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Unexpected end of state data", e);
+    }
+    return out;
+  }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import com.google.common.collect.Maps;
+import org.bukkit.Location;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * The writing half of the binary state format.
+ * World names are interned, so each distinct world is only written out once per file.
+ */
+public final class StateOutput {
+
+  private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+  private final DataOutputStream out = new DataOutputStream(bytes);
+  private final Map<String, Integer> worlds = Maps.newHashMap();
+
+  StateOutput() {
+  }
+
+  /**
+   * Encode something on its own, so that the bytes can be kept and written again with {@link #writeEncoded(byte[])}.
+   * World names aren't interned across separate encodings, so this is only for data without worlds.
+   *
+   * @param encoder the encoder
+   * @return the bytes
+   */
+  @Nonnull
+  public static byte[] encode(@Nonnull Encoder encoder) {
+    StateOutput out = new StateOutput();
+    try {
+      encoder.write(out);
+    } catch (IOException e) {
+      // Writing to memory can't fail
+      throw new IllegalStateException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Write bytes made by {@link #encode(Encoder)}.
+   *
+   * @param encoded the bytes
+   * @throws IOException if they could not be written
+   */
+  public void writeEncoded(@Nonnull byte[] encoded) throws IOException {
+    out.write(encoded);
+  }
+
+  public void writeInt(int value) throws IOException {
+    out.writeInt(value);
+  }
+
+  public void writeLong(long value) throws IOException {
+    out.writeLong(value);
+  }
+
+  public void writeBoolean(boolean value) throws IOException {
+    out.writeBoolean(value);
+  }
+
+  /**
+   * Write a length-prefixed UTF-8 string.
+   *
+   * @param value the string
+   * @throws IOException if it could not be written
+   */
+  public void writeString(@Nonnull String value) throws IOException {
+    byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(encoded.length);
+    out.write(encoded);
+  }
+
+  public void writeUuid(@Nonnull UUID uuid) throws IOException {
+    out.writeLong(uuid.getMostSignificantBits());
+    out.writeLong(uuid.getLeastSignificantBits());
+  }
+
+  /**
+   * Write an instant with millisecond precision.
+   *
+   * @param instant the instant
+   * @throws IOException if it could not be written
+   */
+  public void writeInstant(@Nonnull Instant instant) throws IOException {
+    out.writeLong(instant.toEpochMilli());
+  }
+
+  /**
+   * Write a world name as an index into the worlds written so far,
+   * followed by the name itself only the first time it is seen.
+   *
+   * @param name the world name
+   * @throws IOException if it could not be written
+   */
+  public void writeWorld(@Nonnull String name) throws IOException {
+    Integer index = worlds.get(name);
+    if (index != null) {
+      out.writeInt(index);
+    } else {
+      out.writeInt(worlds.size());
+      worlds.put(name, worlds.size());
+      writeString(name);
+    }
+  }
+
+  /**
+   * Write a location including its world, coordinates and rotation.
+   *
+   * @param location the location
+   * @throws IOException if it could not be written
+   */
+  public void writeLocation(@Nonnull Location location) throws IOException {
+    writeWorld(Objects.requireNonNull(location.getWorld(), "A location must have a world to be saved").getName());
+    out.writeDouble(location.getX());
+    out.writeDouble(location.getY());
+    out.writeDouble(location.getZ());
+    out.writeFloat(location.getYaw());
+    out.writeFloat(location.getPitch());
+  }
+
+  /**
+   * Write a location in the form of {@link Location#serialize()}, which doesn't need its world to be loaded.
+   * This is written the same as {@link #writeLocation(Location)}.
+   *
+   * @param serialized the serialized location
+   * @throws IOException if it could not be written
+   */
+  public void writeLocation(@Nonnull Map<String, Object> serialized) throws IOException {
+    writeWorld(Objects.requireNonNull(serialized.get("world"), "A location must have a world to be saved").toString());
+    out.writeDouble(((Number) serialized.get("x")).doubleValue());
+    out.writeDouble(((Number) serialized.get("y")).doubleValue());
+    out.writeDouble(((Number) serialized.get("z")).doubleValue());
+    out.writeFloat(((Number) serialized.get("yaw")).floatValue());
+    out.writeFloat(((Number) serialized.get("pitch")).floatValue());
+  }
+
+  byte[] toByteArray() {
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Writes something to a {@link StateOutput}.
+   */
+  @FunctionalInterface
+  public interface Encoder {
+
+    void write(@Nonnull StateOutput out) throws IOException;
+
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Identifies the content of a state file, so that a reload can skip files which haven't changed.
+ * The modification time and length are checked first, and the file is only hashed when they differ.
+ */
+final class StateStamp {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private final long lastModified;
+  private final long length;
+  private final HashCode hash;
+
+  private StateStamp(long lastModified, long length, @Nonnull HashCode hash) {
+    this.lastModified = lastModified;
+    this.length = length;
+    this.hash = hash;
+  }
+
+  /**
+   * Stamp a file which was just written.
+   *
+   * @param file  the file
+   * @param bytes the content which was written to it
+   * @return the stamp
+   */
+  @Nonnull
+  static StateStamp written(@Nonnull File file, @Nonnull byte[] bytes) {
+    return new StateStamp(file.lastModified(), bytes.length, HASH_FUNCTION.hashBytes(bytes));
+  }
+
+  /**
+   * Stamp a file as it is now.
+   *
+   * @param file     the file
+   * @param previous the last stamp of the file, which is reused if the file looks untouched
+   * @return the stamp
+   * @throws IOException if the file couldn't be read
+   */
+  @Nonnull
+  static StateStamp read(@Nonnull File file, @Nullable StateStamp previous) throws IOException {
+    long lastModified = file.lastModified();
+    long length = file.length();
+    if (previous != null && previous.lastModified == lastModified && previous.length == length) {
+      return previous;
+    }
+    return new StateStamp(lastModified, length, Files.asByteSource(file).hash(HASH_FUNCTION));
+  }
+
+  boolean hasSameContent(@Nonnull StateStamp other) {
+    return length == other.length && hash.equals(other.hash);
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import com.pietersvenson.workshop.Workshop;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Writes serialized state to disk on a dedicated thread so that the
+ * encoding and file I/O never happen during a server tick.
+ */
+final class StateWriter {
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "Workshop State Writer");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * Queue a write of a state snapshot. Writes are performed in the order they are queued.
+   *
+   * @param file     the destination file
+   * @param snapshot the snapshot to encode on the writer thread
+   */
+  void write(@Nonnull File file, @Nonnull Supplier<byte[]> snapshot) {
+    write(file, snapshot, bytes -> {
+    });
+  }
+
+  /**
+   * Queue a write of a state snapshot, and be told what was written once it's on disk.
+   *
+   * @param file      the destination file
+   * @param snapshot  the snapshot to encode on the writer thread
+   * @param onWritten called on the writer thread with the content after it was written
+   */
+  void write(@Nonnull File file, @Nonnull Supplier<byte[]> snapshot, @Nonnull Consumer<byte[]> onWritten) {
+    Runnable task = () -> {
+      try {
+        byte[] bytes = snapshot.get();
+        writeAtomically(file, bytes);
+        onWritten.accept(bytes);
+      } catch (Exception e) {
+        Workshop.getInstance().getLogger().severe("An error occurred trying to save state data to file: "
+            + file.getAbsolutePath());
+        e.printStackTrace();
+      }
+    };
+    submit(task);
+  }
+
+  /**
+   * Queue any other disk task so that it is ordered with respect to the queued writes.
+   *
+   * @param task the task to run on the writer thread
+   */
+  void submit(@Nonnull Runnable task) {
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      // We've already been flushed, so just finish the job here
+      task.run();
+    }
+  }
+
+  /**
+   * Finish all queued writes and stop accepting new ones.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit    the unit of the timeout
+   * @return true if all writes finished in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  boolean flush(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+    executor.shutdown();
+    return executor.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Write to a temporary file first and then move it into place
+   * so that a crash mid-write never leaves a truncated state file.
+   *
+   * @param file  the destination file
+   * @param bytes the content
+   * @throws IOException if the file could not be written
+   */
+  static void writeAtomically(@Nonnull File file, @Nonnull byte[] bytes) throws IOException {
+    Path target = file.toPath();
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temp,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    try {
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+}
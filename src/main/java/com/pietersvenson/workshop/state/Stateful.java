@@ -25,7 +25,11 @@
 
 package com.pietersvenson.workshop.state;
 
+import com.google.common.io.CharStreams;
+
 import javax.annotation.Nonnull;
+import java.io.Reader;
+import java.util.function.Supplier;
 
 public interface Stateful {
 
@@ -35,6 +39,56 @@ public interface Stateful {
   @Nonnull
   String dumpState();
 
+  /**
+   * Capture the current state so it can be serialized off of the main thread.
+   * The returned supplier may be called from any thread, so it must only read
+   * from data that was copied when this method was called.
+   *
+   * @return a supplier of the serialized state
+   */
+  @Nonnull
+  default Supplier<String> snapshotState() {
+    String state = dumpState();
+    return () -> state;
+  }
+
   void loadState(String state) throws Exception;
 
+  /**
+   * Parse the state without modifying this object, so that it may be done off of the main thread.
+   * The returned installer swaps the parsed state in and is run on the main thread.
+   * By default, all of the parsing is deferred to the installer.
+   *
+   * @param state the serialized state
+   * @return the installer of the parsed state
+   * @throws Exception if the state could not be parsed
+   */
+  @Nonnull
+  default Installer parseState(String state) throws Exception {
+    return () -> loadState(state);
+  }
+
+  /**
+   * Parse the state from a stream without modifying this object.
+   * By default, the whole stream is read into memory and passed to {@link #parseState(String)}.
+   *
+   * @param reader the source of the serialized state
+   * @return the installer of the parsed state
+   * @throws Exception if the state could not be read or parsed
+   */
+  @Nonnull
+  default Installer parseState(@Nonnull Reader reader) throws Exception {
+    return parseState(CharStreams.toString(reader));
+  }
+
+  /**
+   * Installs state which was parsed off of the main thread.
+   */
+  @FunctionalInterface
+  interface Installer {
+
+    void install() throws Exception;
+
+  }
+
 }
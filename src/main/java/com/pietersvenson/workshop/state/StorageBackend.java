@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import javax.annotation.Nonnull;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A store which replaces the state files and the journal for the {@link Stateful} objects it supports.
+ * Mutations are written in batched transactions on a background thread, and the store may be queried directly.
+ */
+public interface StorageBackend {
+
+  /**
+   * Open the store and create whatever it needs for the given stateful objects.
+   *
+   * @param statefuls every stateful object
+   * @throws Exception if the store couldn't be opened
+   */
+  void open(@Nonnull Collection<Stateful> statefuls) throws Exception;
+
+  /**
+   * Check whether this store handles a stateful object.
+   *
+   * @param stateful the stateful object
+   * @return true if it is stored here instead of in files
+   */
+  boolean supports(@Nonnull Stateful stateful);
+
+  /**
+   * Check whether a stateful object has ever been saved to this store.
+   * This blocks until all queued writes are done.
+   *
+   * @param stateful the stateful object
+   * @return true if it has been saved here before
+   */
+  boolean contains(@Nonnull Stateful stateful);
+
+  /**
+   * Read the state of a stateful object without modifying it.
+   *
+   * @param stateful the stateful object
+   * @return a future of the installer of the state which was read
+   */
+  @Nonnull
+  CompletableFuture<Stateful.Installer> read(@Nonnull Stateful stateful);
+
+  /**
+   * Queue a single mutation, which was recorded with {@link WorkshopState#record(Journaled, String, Supplier)}.
+   * The arguments are only supplied once the mutation is written.
+   *
+   * @param stateful  the stateful object which changed
+   * @param operation the operation
+   * @param arguments the supplier of the arguments of the operation
+   */
+  void record(@Nonnull Journaled stateful, @Nonnull String operation, @Nonnull Supplier<String[]> arguments);
+
+  /**
+   * Capture the whole state of a stateful object and queue it to replace what is stored.
+   * This must be called from the main thread.
+   *
+   * @param stateful the stateful object
+   */
+  void replace(@Nonnull Stateful stateful);
+
+  /**
+   * Run a query once all queued writes are done.
+   *
+   * @param query the query
+   * @param <T>   the type of the result
+   * @return a future of the result
+   */
+  @Nonnull
+  <T> CompletableFuture<T> query(@Nonnull Query<T> query);
+
+  /**
+   * Finish all queued writes and close the store.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit    the unit of the timeout
+   * @return true if everything was written in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  boolean close(long timeout, @Nonnull TimeUnit unit) throws InterruptedException;
+
+  /**
+   * A query against the store.
+   *
+   * @param <T> the type of the result
+   */
+  @FunctionalInterface
+  interface Query<T> {
+
+    T run(@Nonnull Connection connection) throws SQLException;
+
+  }
+
+}
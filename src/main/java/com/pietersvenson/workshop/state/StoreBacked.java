@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A {@link Stateful} which keeps its state in its own on-disk store, which every change is written to directly.
+ * Saving it only makes sure the store has reached the storage device. Its state files are only written
+ * when exporting, and are only loaded when they are newer than the store, so that edited exports can be imported.
+ */
+public interface StoreBacked extends Stateful {
+
+  /**
+   * Get the file which backs the store.
+   *
+   * @return the file
+   */
+  @Nonnull
+  File getStoreFile();
+
+  /**
+   * Open the store if it isn't open yet. This is called on the main thread before anything is loaded.
+   *
+   * @throws IOException if the store couldn't be opened
+   */
+  void openStore() throws IOException;
+
+  /**
+   * Write all changes through to the storage device. This is called from the state writer thread.
+   */
+  void flushStore();
+
+  /**
+   * Flush and close the store. This is called from the state writer thread when shutting down.
+   *
+   * @throws IOException if the store couldn't be closed
+   */
+  void closeStore() throws IOException;
+
+}
@@ -25,9 +25,14 @@
 
 package com.pietersvenson.workshop.state;
 
-import com.google.common.io.Files;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.pietersvenson.workshop.Workshop;
 import com.pietersvenson.workshop.config.ConfigManager;
+import com.pietersvenson.workshop.config.Settings;
+import com.pietersvenson.workshop.features.FeatureManager;
 import com.pietersvenson.workshop.features.banitem.BanitemManager;
 import com.pietersvenson.workshop.features.classes.ClassroomManager;
 import com.pietersvenson.workshop.features.freeze.FreezeManager;
@@ -37,18 +42,36 @@ import com.pietersvenson.workshop.features.nickname.NicknameManager;
 import com.pietersvenson.workshop.features.spawn.SpawnManager;
 import com.pietersvenson.workshop.features.tectonic.TectonicManager;
 import com.pietersvenson.workshop.features.teleport.TeleportManager;
+import com.pietersvenson.workshop.permission.StaffRoster;
+import com.pietersvenson.workshop.player.PlayerContexts;
+import com.pietersvenson.workshop.util.Timings;
 import lombok.Getter;
+import org.bukkit.Bukkit;
 
+import javax.annotation.Nonnull;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public final class WorkshopState {
 
+  public static final String JOURNAL_FILE_NAME = "journal.log";
+  public static final String DATABASE_FILE_NAME = "workshop.db";
+
   @Getter
   private final ConfigManager configManager = new ConfigManager();
   @Getter
@@ -69,73 +92,536 @@ public final class WorkshopState {
   private final TectonicManager tectonicManager = new TectonicManager();
   @Getter
   private final MenuManager menuManager = new MenuManager();
+  @Getter
+  private final StaffRoster staffRoster = new StaffRoster();
+  @Getter
+  private final PlayerContexts playerContexts = new PlayerContexts();
 
-  private List<Stateful> getStatefuls() {
-    return Arrays.stream(WorkshopState.class.getDeclaredFields())
-        .map(field -> {
-          try {
-            return field.get(this);
-          } catch (IllegalAccessException e) {
-            e.printStackTrace();
-            return null;
-          }
-        })
-        .filter(object -> object instanceof Stateful)
-        .map(object -> ((Stateful) object))
-        .collect(Collectors.toList());
+  private final StateWriter writer = new StateWriter();
+  private final Set<Stateful> dirty = Sets.newConcurrentHashSet();
+  // Stores which only need flushing, because every change to them was also recorded in the backend
+  private final Set<StoreBacked> dirtyStores = Sets.newConcurrentHashSet();
+  private final AtomicBoolean saveScheduled = new AtomicBoolean(false);
+  private final Journal journal = new Journal(new File(Workshop.getInstance().getDataFolder(), JOURNAL_FILE_NAME));
+  private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+  private final StateCodec yamlCodec = new YamlStateCodec();
+  private final StateCodec binaryCodec = new BinaryStateCodec();
+  private StorageBackend backend;
+  // The last known content of each state file which was loaded or written
+  private final Map<File, StateStamp> stamps = Maps.newConcurrentMap();
+
+  /**
+   * Every {@link Stateful}, in the order they are loaded. The config must come first,
+   * because it decides how everything else is saved.
+   */
+  private final List<Stateful> statefuls = ImmutableList.of(
+      configManager,
+      homeManager,
+      banitemManager,
+      classroomManager,
+      spawnManager,
+      staffRoster);
+  private final List<Journaled> journaled = statefuls.stream()
+      .filter(stateful -> stateful instanceof Journaled)
+      .map(stateful -> (Journaled) stateful)
+      .collect(ImmutableList.toImmutableList());
+
+  private final List<FeatureManager> features = ImmutableList.of(
+      freezeManager,
+      homeManager,
+      banitemManager,
+      classroomManager,
+      nicknameManager,
+      spawnManager,
+      teleportManager,
+      tectonicManager,
+      menuManager,
+      playerContexts);
+
+  /**
+   * Register or unregister the event handlers of every feature to match whether it is enabled
+   * and whether its listeners are in demand.
+   * This must be called from the main thread.
+   */
+  public void refreshListeners() {
+    features.forEach(FeatureManager::refreshListeners);
+  }
+
+  /**
+   * Get the storage backend, if one is configured and could be opened.
+   *
+   * @return the storage backend
+   */
+  public Optional<StorageBackend> getBackend() {
+    return Optional.ofNullable(backend);
+  }
+
+  private boolean isInBackend(Stateful stateful) {
+    return backend != null && backend.supports(stateful);
+  }
+
+  /**
+   * Check whether a stateful object's records go to the journal and it is saved to its own state file.
+   */
+  private boolean isJournaledToFile(Stateful stateful) {
+    return stateful instanceof Journaled && !(stateful instanceof StoreBacked) && !isInBackend(stateful);
   }
 
   /**
    * Save the plugin state to be used across restarts.
+   * The state is captured immediately but written to disk asynchronously.
    */
   public void save() {
-    getStatefuls().forEach(this::save);
+    statefuls.forEach(this::save);
   }
 
+  /**
+   * Save the state of a single {@link Stateful}.
+   * This must be called from the main thread.
+   *
+   * @param stateful the stateful object
+   */
   public void save(Stateful stateful) {
+    dirty.remove(stateful);
+    if (stateful instanceof StoreBacked) {
+      writer.submit(((StoreBacked) stateful)::flushStore);
+    }
+    if (isInBackend(stateful)) {
+      backend.replace(stateful);
+      return;
+    }
+    if (stateful instanceof StoreBacked) {
+      return;
+    }
+    StateCodec codec = getCodec(stateful);
+    write(getStateFile(codec.getFileName(stateful)), codec.snapshot(stateful));
+  }
+
+  /**
+   * Write every {@link Stateful} in the human-readable YAML format, regardless of the configured format.
+   * The exported files may be edited and are picked up by the next load because they are newer.
+   * The journal is compacted first, so the records it held, which the exported files already contain,
+   * aren't replayed over the edits.
+   * This must be called from the main thread.
+   */
+  public void exportYaml() {
+    compact();
+    statefuls.forEach(stateful ->
+        write(getStateFile(yamlCodec.getFileName(stateful)), yamlCodec.snapshot(stateful)));
+  }
+
+  private void write(@Nonnull File file, @Nonnull Supplier<byte[]> snapshot) {
+    writer.write(file, snapshot, bytes -> stamps.put(file, StateStamp.written(file, bytes)));
+  }
+
+  /**
+   * Mark a {@link Stateful} as changed so that it is saved after the configured save delay.
+   * Repeated calls within the delay are coalesced into a single write.
+   * This may be called from any thread.
+   *
+   * @param stateful the stateful object which changed
+   */
+  public void markDirty(@Nonnull Stateful stateful) {
+    dirty.add(stateful);
+    scheduleSave();
+  }
+
+  /**
+   * Mark a {@link StoreBacked} as changed after a change which was also {@link #record recorded}.
+   * If it is kept in the storage backend, only its store is flushed after the save delay,
+   * because the record already updated the backend and replacing its whole state there would be wasted.
+   * Otherwise this is the same as {@link #markDirty(Stateful)}.
+   * This may be called from any thread.
+   *
+   * @param store the store backed object which changed
+   */
+  public void markStoreDirty(@Nonnull StoreBacked store) {
+    if (!isInBackend(store)) {
+      markDirty(store);
+      return;
+    }
+    dirtyStores.add(store);
+    scheduleSave();
+  }
+
+  private void scheduleSave() {
+    if (saveScheduled.compareAndSet(false, true)) {
+      Bukkit.getScheduler().runTaskLater(Workshop.getInstance(),
+          Timings.task("save", this::saveDirty),
+          Math.max(0, Settings.SAVE_DELAY.getValue()));
+    }
+  }
+
+  /**
+   * Save every {@link Stateful} which has changed since it was last saved.
+   * This must be called from the main thread.
+   */
+  public void saveDirty() {
+    saveScheduled.set(false);
+    statefuls.forEach(stateful -> {
+      if (stateful instanceof StoreBacked && dirtyStores.remove(stateful) && !dirty.contains(stateful)) {
+        writer.submit(((StoreBacked) stateful)::flushStore);
+      }
+    });
+    statefuls.forEach(stateful -> {
+      if (dirty.remove(stateful)) {
+        save(stateful);
+      }
+    });
+  }
+
+  /**
+   * Append a single mutation to the journal instead of saving the whole state.
+   * The arguments are captured immediately and written to disk asynchronously.
+   * Once the journal grows past the configured size, it is compacted into fresh state files.
+   *
+   * @param stateful  the stateful object which changed
+   * @param operation an idempotent operation which {@link Journaled#replay(String, List)} understands
+   * @param arguments the arguments of the operation
+   */
+  public void record(@Nonnull Journaled stateful, @Nonnull String operation, @Nonnull String... arguments) {
+    String[] copied = arguments.clone();
+    record(stateful, operation, () -> copied);
+  }
+
+  /**
+   * Append a single mutation to the journal, with arguments which are expensive to encode.
+   * The arguments are encoded off of the main thread, in order with every other mutation,
+   * so the supplier must only read a snapshot which is never modified afterwards.
+   *
+   * @param stateful  the stateful object which changed
+   * @param operation an idempotent operation which {@link Journaled#replay(String, List)} understands
+   * @param arguments the supplier of the arguments of the operation
+   */
+  public void record(@Nonnull Journaled stateful, @Nonnull String operation, @Nonnull Supplier<String[]> arguments) {
+    if (isInBackend(stateful)) {
+      backend.record(stateful, operation, arguments);
+      return;
+    }
+    if (stateful instanceof StoreBacked) {
+      // Already written through to its store
+      return;
+    }
+    String fileName = stateful.getFileName();
+    long threshold = Settings.JOURNAL_COMPACT_SIZE.getValue() * 1024L;
+    writer.submit(() -> {
+      try {
+        if (journal.append(Journal.encode(fileName, operation, arguments.get())) >= threshold) {
+          scheduleCompaction();
+        }
+      } catch (IOException e) {
+        Workshop.getInstance().getLogger().severe("An error occurred trying to append to the state journal. "
+            + "A full save of " + stateful.getFileName() + " will be performed instead.");
+        e.printStackTrace();
+        markDirty(stateful);
+      }
+    });
+  }
+
+  private void scheduleCompaction() {
+    if (compactionScheduled.compareAndSet(false, true)) {
+      Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("compact", this::compact));
+    }
+  }
+
+  /**
+   * Fold the journal into fresh state files and then empty it.
+   * The journal is kept if any of the state files fail to write.
+   * This must be called from the main thread.
+   */
+  public void compact() {
+    compactionScheduled.set(false);
+    List<Journaled> compacted = journaled.stream()
+        .filter(this::isJournaledToFile)
+        .collect(Collectors.toList());
+    compacted.forEach(dirty::remove);
+    Map<File, Supplier<byte[]>> snapshots = compacted.stream()
+        .collect(Collectors.toMap(this::getStateFile, stateful -> getCodec(stateful).snapshot(stateful)));
+    writer.submit(() -> {
+      try {
+        for (Map.Entry<File, Supplier<byte[]>> snapshot : snapshots.entrySet()) {
+          byte[] bytes = snapshot.getValue().get();
+          StateWriter.writeAtomically(snapshot.getKey(), bytes);
+          stamps.put(snapshot.getKey(), StateStamp.written(snapshot.getKey(), bytes));
+        }
+        journal.truncate();
+      } catch (Exception e) {
+        Workshop.getInstance().getLogger().severe("An error occurred trying to compact the state journal. "
+            + "The journal has been kept and will be replayed on the next load.");
+        e.printStackTrace();
+      }
+    });
+  }
+
+  /**
+   * Wait for all queued saves to be written to disk.
+   * No more saves are performed asynchronously after this is called.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit    the unit of the timeout
+   * @return true if everything was written in time
+   */
+  public boolean flush(long timeout, TimeUnit unit) {
+    writer.submit(journal::close);
+    statefuls.stream()
+        .filter(stateful -> stateful instanceof StoreBacked)
+        .forEach(stateful -> writer.submit(() -> {
+          try {
+            ((StoreBacked) stateful).closeStore();
+          } catch (IOException e) {
+            Workshop.getInstance().getLogger().severe("An error occurred trying to close the store: "
+                + ((StoreBacked) stateful).getStoreFile().getAbsolutePath());
+            e.printStackTrace();
+          }
+        }));
     try {
-      getStateFile(stateful).createNewFile();
-      Files.write(stateful.dumpState().getBytes(), getStateFile(stateful));
-    } catch (IOException e) {
-      e.printStackTrace();
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      boolean flushed = writer.flush(timeout, unit);
+      if (backend != null) {
+        flushed &= backend.close(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      }
+      return flushed;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
     }
   }
 
   /**
-   * Load the plugin state from storage.
+   * Load the plugin state from storage, replacing all of it.
+   * If a {@link Stateful} is stored in more than one format, the most recently written file is used,
+   * and it is saved again in the configured format if that differs.
+   * State which is kept in the storage backend is read from there instead, once it has been saved there.
    */
   public boolean load() {
-    AtomicBoolean successful = new AtomicBoolean(true);
-    getStatefuls().forEach(stateful -> {
-      File stateFile = getStateFile(stateful);
-      try {
-        if (stateFile.exists()) {
-          stateful.loadState(Files.toString(stateFile, StandardCharsets.UTF_8));
-        } else {
-          save(stateful);
+    stamps.clear();
+    return load(false);
+  }
+
+  /**
+   * Load only the state files which changed since they were last loaded or saved.
+   * Everything else is left as it is, and changed state is swapped in whole,
+   * so the managers are never seen empty or half-loaded.
+   * This must be called from the main thread.
+   */
+  public boolean reload() {
+    return load(true);
+  }
+
+  private boolean load(boolean incremental) {
+    boolean backendWasOpen = backend != null;
+    boolean successful = openBackend();
+    List<Stateful> missing = Lists.newLinkedList();
+    Map<Stateful, String> sources = Maps.newHashMap();
+    Map<Stateful, CompletableFuture<Stateful.Installer>> parsed = Maps.newLinkedHashMap();
+    Set<Stateful> changed = Sets.newHashSet();
+
+    // Read and parse everything in parallel
+    for (Stateful stateful : statefuls) {
+      long storeModified = 0;
+      if (stateful instanceof StoreBacked) {
+        StoreBacked storeBacked = (StoreBacked) stateful;
+        storeModified = storeBacked.getStoreFile().lastModified();
+        try {
+          storeBacked.openStore();
+        } catch (IOException e) {
+          Workshop.getInstance().getLogger().severe("An error occurred trying to open the store: "
+              + storeBacked.getStoreFile().getAbsolutePath());
+          e.printStackTrace();
+          successful = false;
+          continue;
+        }
+      }
+      if (isInBackend(stateful)) {
+        if (incremental && backendWasOpen) {
+          // Nothing else writes to the backend, so it can't have changed
+          continue;
+        }
+        if (backend.contains(stateful)) {
+          sources.put(stateful, DATABASE_FILE_NAME);
+          parsed.put(stateful, backend.read(stateful).thenApply(installer -> () -> {
+            installer.install();
+            changed.add(stateful);
+          }));
+          continue;
+        }
+        // Move it into the backend once it's loaded from its files
+        markDirty(stateful);
+      }
+      Optional<StateCodec> codec = Stream.of(binaryCodec, yamlCodec)
+          .filter(candidate -> candidate.supports(stateful))
+          .filter(candidate -> getStateFile(candidate.getFileName(stateful)).exists())
+          .max(Comparator.comparingLong(candidate -> getStateFile(candidate.getFileName(stateful)).lastModified()));
+      if (!codec.isPresent()) {
+        if (!(stateful instanceof StoreBacked)) {
+          missing.add(stateful);
+        }
+        continue;
+      }
+      File stateFile = getStateFile(codec.get().getFileName(stateful));
+      // The store is always up to date, so only import state files which were written after it
+      if (stateful instanceof StoreBacked && stateFile.lastModified() <= storeModified) {
+        continue;
+      }
+      boolean resave = stateful instanceof StoreBacked || codec.get() != getCodec(stateful);
+      StateStamp previous = incremental ? stamps.get(stateFile) : null;
+      sources.put(stateful, stateFile.getAbsolutePath());
+      parsed.put(stateful, CompletableFuture.supplyAsync(() -> {
+        try {
+          StateStamp current = StateStamp.read(stateFile, previous);
+          if (previous != null && current.hasSameContent(previous)) {
+            return () -> stamps.put(stateFile, current);
+          }
+          Stateful.Installer installer = codec.get().parse(stateful, stateFile);
+          return () -> {
+            installer.install();
+            stamps.put(stateFile, current);
+            changed.add(stateful);
+            if (resave) {
+              markDirty(stateful);
+            }
+          };
+        } catch (Exception e) {
+          throw new CompletionException(e);
         }
+      }, ForkJoinPool.commonPool()));
+    }
+
+    // Swap the parsed state into the managers on this thread
+    for (Map.Entry<Stateful, CompletableFuture<Stateful.Installer>> entry : parsed.entrySet()) {
+      Stateful stateful = entry.getKey();
+      try {
+        entry.getValue().join().install();
       } catch (Exception e) {
         Workshop.getInstance().getLogger().severe(
-            "An error occurred trying to load state data from file: "
-                + stateFile.getAbsolutePath());
+            "An error occurred trying to load state data from: " + sources.get(stateful));
+        (e instanceof CompletionException && e.getCause() != null ? e.getCause() : e).printStackTrace();
+        successful = false;
+      }
+    }
+
+    // Only now is the configured format known
+    missing.forEach(this::save);
+
+    // Changes since the last compaction are only missing from state which was just read
+    if (!replayJournal(incremental ? changed : statefuls)) {
+      successful = false;
+    }
+    if (incremental) {
+      Workshop.getInstance().getLogger().info("Reloaded " + changed.size() + " changed state files.");
+    }
+    // The config and the state which decides the demand for listeners may have changed
+    refreshListeners();
+    playerContexts.refreshAll();
+    playerContexts.scheduleRefresh();
+    return successful;
+  }
+
+  /**
+   * Open the configured storage backend, if there is one and it isn't open yet.
+   * If it can't be opened, state files are used instead.
+   *
+   * @return false if the backend couldn't be opened
+   */
+  private boolean openBackend() {
+    if (backend != null || !Settings.STATE_BACKEND.getValue().equalsIgnoreCase("sqlite")) {
+      return true;
+    }
+    SqliteStorageBackend opening = new SqliteStorageBackend(getStateFile(DATABASE_FILE_NAME));
+    try {
+      opening.open(statefuls);
+      backend = opening;
+      return true;
+    } catch (Exception e) {
+      Workshop.getInstance().getLogger().severe("An error occurred trying to open the database "
+          + DATABASE_FILE_NAME + ". State files will be used instead.");
+      e.printStackTrace();
+      try {
+        opening.close(0, TimeUnit.SECONDS);
+      } catch (InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Apply every mutation recorded since the last compaction on top of the loaded state.
+   *
+   * @param targets the stateful objects whose records are applied
+   * @return false if any part of the journal could not be applied
+   */
+  private boolean replayJournal(@Nonnull Collection<Stateful> targets) {
+    Journal.Contents contents;
+    try {
+      contents = journal.read();
+    } catch (IOException e) {
+      Workshop.getInstance().getLogger().severe("An error occurred trying to read the state journal: "
+          + JOURNAL_FILE_NAME);
+      e.printStackTrace();
+      return false;
+    }
+    if (contents.isTorn()) {
+      Workshop.getInstance().getLogger().warning("The state journal ends with a damaged record, probably from a crash. "
+          + (contents.getLength() - contents.getIntactLength()) + " bytes after the last intact record were ignored.");
+    }
+    List<Journal.Entry> entries = contents.getEntries();
+    Map<String, Journaled> byFileName = journaled.stream()
+        .collect(Collectors.toMap(Stateful::getFileName, Function.identity()));
+    boolean successful = true;
+    int replayed = 0;
+    for (Journal.Entry entry : entries) {
+      Journaled stateful = byFileName.get(entry.getFileName());
+      try {
+        if (stateful == null) {
+          throw new IllegalStateException("No journaled state is saved to " + entry.getFileName());
+        }
+        if (!targets.contains(stateful)) {
+          continue;
+        }
+        replayed++;
+        stateful.replay(entry.getOperation(), entry.getArguments());
+      } catch (Exception e) {
+        Workshop.getInstance().getLogger().severe("An error occurred trying to replay a journaled "
+            + entry.getOperation() + " on " + entry.getFileName() + ". This record has been skipped.");
         e.printStackTrace();
-        successful.set(false);
+        successful = false;
       }
-    });
-    return successful.get();
+    }
+    if (replayed > 0) {
+      Workshop.getInstance().getLogger().info("Replayed " + replayed + " journaled changes.");
+    }
+    return successful;
+  }
+
+  /**
+   * Get the format a {@link Stateful} should be saved in, according to the configuration.
+   *
+   * @param stateful the stateful object
+   * @return the codec of the format
+   */
+  private StateCodec getCodec(Stateful stateful) {
+    if (Settings.STATE_FORMAT.getValue().equalsIgnoreCase("binary") && binaryCodec.supports(stateful)) {
+      return binaryCodec;
+    }
+    return yamlCodec;
   }
 
   /**
-   * Get the state file associated with a specific {@link Stateful}.
+   * Get the state file associated with a specific {@link Stateful} in the configured format.
    *
    * @param stateful the stateful object
    * @return the appropriate file
    */
-  public static File getStateFile(Stateful stateful) {
+  public File getStateFile(Stateful stateful) {
+    return getStateFile(getCodec(stateful).getFileName(stateful));
+  }
+
+  private static File getStateFile(String fileName) {
     Workshop.getInstance().getDataFolder().mkdirs();
     return new File(Workshop.getInstance().getDataFolder().getPath()
         + "/"
-        + stateful.getFileName());
+        + fileName);
   }
 
 }
@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.pietersvenson.workshop.state;
+
+import com.google.common.io.Files;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * The human-readable format, which every {@link Stateful} supports.
+ */
+final class YamlStateCodec implements StateCodec {
+
+  @Override
+  public boolean supports(@Nonnull Stateful stateful) {
+    return true;
+  }
+
+  @Nonnull
+  @Override
+  public String getFileName(@Nonnull Stateful stateful) {
+    return stateful.getFileName();
+  }
+
+  @Nonnull
+  @Override
+  public Supplier<byte[]> snapshot(@Nonnull Stateful stateful) {
+    Supplier<String> state = stateful.snapshotState();
+    return () -> state.get().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Nonnull
+  @Override
+  public Stateful.Installer parse(@Nonnull Stateful stateful, @Nonnull File file) throws Exception {
+    try (Reader reader = Files.newReader(file, StandardCharsets.UTF_8)) {
+      return stateful.parseState(reader);
+    }
+  }
+
+}
@@ -25,12 +25,8 @@
 
 package com.pietersvenson.workshop.util;
 
-import com.pietersvenson.workshop.permission.Permissions;
+import com.pietersvenson.workshop.Workshop;
 import org.bukkit.Bukkit;
-import org.bukkit.command.CommandSender;
-
-import java.util.List;
-import java.util.stream.Collectors;
 
 public final class Communication {
 
@@ -38,13 +34,9 @@ public final class Communication {
   }
 
   public static void sendStaffMessage(String message) {
-    List<CommandSender> staff = Bukkit.getOnlinePlayers()
-        .stream()
-        .filter(player -> player.hasPermission(Permissions.STAFF))
-        .map(player -> ((CommandSender) player))
-        .collect(Collectors.toList());
-    staff.add(Bukkit.getConsoleSender());
-    staff.forEach(sender -> sender.sendMessage(message));
+    Workshop.getInstance().getState().getPlayerContexts().getOnlineStaff()
+        .forEach(player -> player.sendMessage(message));
+    Bukkit.getConsoleSender().sendMessage(message);
   }
 
 }
@@ -25,7 +25,11 @@
 
 package com.pietersvenson.workshop.util;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.pietersvenson.workshop.Workshop;
+import com.pietersvenson.workshop.config.Settings;
 import org.bukkit.Bukkit;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -35,9 +39,17 @@ import org.json.simple.parser.ParseException;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -46,13 +58,19 @@ import java.util.concurrent.TimeoutException;
 
 public final class External {
 
+  // The most usernames the profile API accepts in one request
+  private static final int PROFILE_BATCH_SIZE = 10;
+  // HttpURLConnection has no constant for it
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+  private static final long RATE_LIMIT_BACKOFF_MILLIS = 1000;
+
   private External() {
   }
 
   public static CompletableFuture<Optional<UUID>> getPlayerUuid(String username) {
     CompletableFuture<Optional<UUID>> out = CompletableFuture.supplyAsync(() -> {
       try {
-        URL obj = new URL("https://api.mojang.com/users/profiles/minecraft/" + username);
+        URL obj = new URL(Settings.PROFILE_API.getValue() + "/users/profiles/minecraft/" + username);
         HttpURLConnection con = (HttpURLConnection) obj.openConnection();
         con.setRequestMethod("GET");
         int responseCode = con.getResponseCode();
@@ -76,15 +94,7 @@ public final class External {
           return Optional.empty();
         }
         String basicUuid = ((JSONObject) JSONValue.parseWithException(response)).get("id").toString();
-        return Optional.of(UUID.fromString(basicUuid.substring(0, 8)
-            + "-"
-            + basicUuid.subSequence(8, 12)
-            + "-"
-            + basicUuid.subSequence(12, 16)
-            + "-"
-            + basicUuid.subSequence(16, 20)
-            + "-"
-            + basicUuid.substring(20)));
+        return Optional.of(parseUndashedUuid(basicUuid));
       } catch (IOException | ParseException e) {
         e.printStackTrace();
       }
@@ -92,13 +102,13 @@ public final class External {
       return Optional.empty();
     });
 
-    Bukkit.getScheduler().runTask(Workshop.getInstance(), () -> {
+    Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("player uuid lookup", () -> {
       try {
         out.get(2, TimeUnit.SECONDS);
       } catch (InterruptedException | ExecutionException | TimeoutException e) {
         Workshop.getInstance().getLogger().throwing("External.java", "getPlayerUuid(UUID)", e);
       }
-    });
+    }));
 
     return out;
 
@@ -107,7 +117,7 @@ public final class External {
   public static CompletableFuture<Optional<String>> getPlayerName(UUID uuid) {
     CompletableFuture<Optional<String>> out = CompletableFuture.supplyAsync(() -> {
       try {
-        URL obj = new URL("https://api.mojang.com/user/profiles/" + uuid.toString().replace("-", "") + "/names");
+        URL obj = new URL(Settings.PROFILE_API.getValue() + "/user/profiles/" + uuid.toString().replace("-", "") + "/names");
         HttpURLConnection con = (HttpURLConnection) obj.openConnection();
         con.setRequestMethod("GET");
         int responseCode = con.getResponseCode();
@@ -139,16 +149,131 @@ public final class External {
       return Optional.empty();
     });
 
-    Bukkit.getScheduler().runTask(Workshop.getInstance(), () -> {
+    Bukkit.getScheduler().runTask(Workshop.getInstance(), Timings.task("player name lookup", () -> {
       try {
         out.get(2, TimeUnit.SECONDS);
       } catch (InterruptedException | ExecutionException | TimeoutException e) {
         Workshop.getInstance().getLogger().throwing("External.java", "getPlayerName(UUID)", e);
       }
-    });
+    }));
 
     return out;
 
   }
 
+  /**
+   * Look up the uuids of many players at once. The profile API is sent the usernames in batches,
+   * one after another, rather than with a request for each. A batch which fails is tried once more,
+   * after a pause if the API is rate limiting, and its usernames are reported as failed if it fails again.
+   *
+   * @param usernames the usernames
+   * @return the uuids of the players which exist and the usernames which couldn't be looked up
+   */
+  public static CompletableFuture<UuidLookup> getPlayerUuids(Collection<String> usernames) {
+    List<String> requested = Lists.newArrayList(usernames);
+    return CompletableFuture.supplyAsync(() -> {
+      UuidLookup out = new UuidLookup(requested.size());
+      for (List<String> batch : Lists.partition(requested, PROFILE_BATCH_SIZE)) {
+        int status = lookUpBatch(batch, out.found);
+        if (status == HttpURLConnection.HTTP_OK) {
+          continue;
+        }
+        if (status == HTTP_TOO_MANY_REQUESTS) {
+          try {
+            Thread.sleep(RATE_LIMIT_BACKOFF_MILLIS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        if (lookUpBatch(batch, out.found) != HttpURLConnection.HTTP_OK) {
+          batch.forEach(username -> out.failed.add(username.toLowerCase()));
+        }
+      }
+      return out;
+    });
+  }
+
+  /**
+   * Send one batch of usernames to the profile API.
+   *
+   * @param batch the usernames
+   * @param out   the map to put the uuids of the players which exist into, keyed by their lowercase username
+   * @return the response code, or -1 if the request failed
+   */
+  private static int lookUpBatch(List<String> batch, Map<String, UUID> out) {
+    try {
+      HttpURLConnection con = (HttpURLConnection) new URL(Settings.PROFILE_API.getValue()
+          + "/profiles/minecraft").openConnection();
+      con.setRequestMethod("POST");
+      con.setRequestProperty("Content-Type", "application/json");
+      con.setDoOutput(true);
+      try (Writer body = new OutputStreamWriter(con.getOutputStream(), StandardCharsets.UTF_8)) {
+        JSONArray.writeJSONString(batch, body);
+      }
+      int status = con.getResponseCode();
+      if (status != HttpURLConnection.HTTP_OK) {
+        Workshop.getInstance().getLogger().warning("The profile API responded with "
+            + status + " to a batch of " + batch.size() + " usernames");
+        return status;
+      }
+      try (Reader in = new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8)) {
+        for (Object profile : (JSONArray) JSONValue.parseWithException(in)) {
+          JSONObject json = (JSONObject) profile;
+          out.put(json.get("name").toString().toLowerCase(), parseUndashedUuid(json.get("id").toString()));
+        }
+      }
+      return status;
+    } catch (IOException | ParseException | ClassCastException e) {
+      Workshop.getInstance().getLogger().severe("An error occurred looking up a batch of usernames");
+      e.printStackTrace();
+      return -1;
+    }
+  }
+
+  private static UUID parseUndashedUuid(String basicUuid) {
+    return UUID.fromString(basicUuid.substring(0, 8)
+        + "-"
+        + basicUuid.subSequence(8, 12)
+        + "-"
+        + basicUuid.subSequence(12, 16)
+        + "-"
+        + basicUuid.subSequence(16, 20)
+        + "-"
+        + basicUuid.substring(20));
+  }
+
+  /**
+   * The result of looking up many usernames.
+   */
+  public static final class UuidLookup {
+
+    private final Map<String, UUID> found;
+    private final Set<String> failed = Sets.newHashSet();
+
+    private UuidLookup(int expectedSize) {
+      this.found = Maps.newHashMapWithExpectedSize(expectedSize);
+    }
+
+    /**
+     * Get the uuid of a player.
+     *
+     * @param username the username
+     * @return the uuid, or empty if no player exists with the username or the lookup failed
+     */
+    public Optional<UUID> get(String username) {
+      return Optional.ofNullable(found.get(username.toLowerCase()));
+    }
+
+    /**
+     * Check whether a username couldn't be looked up, so it's unknown whether the player exists.
+     *
+     * @param username the username
+     * @return true if the lookup failed
+     */
+    public boolean isFailed(String username) {
+      return failed.contains(username.toLowerCase());
+    }
+
+  }
+
 }
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.util;
+
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The time spent in one handler, task or command.
+ * Call counts, total and max are kept since the last reset, and percentiles cover the last one to two minutes.
+ * It may be recorded from any thread.
+ */
+public final class Timing {
+
+  private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+  // Durations are bucketed by their highest bit, so each bucket is twice as wide as the one before
+  private static final int BUCKETS = 64;
+
+  @Getter
+  private final String name;
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+  private volatile AtomicLongArray current = new AtomicLongArray(BUCKETS);
+  private volatile AtomicLongArray previous = new AtomicLongArray(BUCKETS);
+  private volatile long windowStart = System.nanoTime();
+
+  Timing(@Nonnull String name) {
+    this.name = name;
+  }
+
+  /**
+   * Record a call which started at the given time and ends now.
+   *
+   * @param startNanos the start of the call, from {@link System#nanoTime()}
+   */
+  public void record(long startNanos) {
+    long now = System.nanoTime();
+    long nanos = Math.max(0, now - startNanos);
+    count.increment();
+    total.add(nanos);
+    if (nanos > max.get()) {
+      max.accumulateAndGet(nanos, Math::max);
+    }
+    if (now - windowStart >= WINDOW_NANOS) {
+      rotate(now);
+    }
+    current.incrementAndGet(BUCKETS - 1 - Math.min(BUCKETS - 1, Long.numberOfLeadingZeros(nanos)));
+  }
+
+  private synchronized void rotate(long now) {
+    if (now - windowStart < WINDOW_NANOS) {
+      return;
+    }
+    previous = now - windowStart < 2 * WINDOW_NANOS ? current : new AtomicLongArray(BUCKETS);
+    current = new AtomicLongArray(BUCKETS);
+    windowStart = now;
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getTotalNanos() {
+    return total.sum();
+  }
+
+  public long getMaxNanos() {
+    return max.get();
+  }
+
+  public long getMeanNanos() {
+    long calls = getCount();
+    return calls == 0 ? 0 : getTotalNanos() / calls;
+  }
+
+  /**
+   * Estimate a percentile of the recent calls, to within a factor of two.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the upper bound of the bucket containing the percentile in nanoseconds, or 0 if there were no recent calls
+   */
+  public long getPercentileNanos(double percentile) {
+    AtomicLongArray current = this.current;
+    AtomicLongArray previous = this.previous;
+    long[] buckets = new long[BUCKETS];
+    long calls = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = current.get(i) + previous.get(i);
+      calls += buckets[i];
+    }
+    if (calls == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(calls * Math.min(100, Math.max(0, percentile)) / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets[i];
+      if (seen >= Math.max(1, rank)) {
+        return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i + 1) - 1;
+      }
+    }
+    return getMaxNanos();
+  }
+
+  /**
+   * Forget everything recorded so far.
+   */
+  public synchronized void reset() {
+    count.reset();
+    total.reset();
+    max.set(0);
+    current = new AtomicLongArray(BUCKETS);
+    previous = new AtomicLongArray(BUCKETS);
+    windowStart = System.nanoTime();
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Pieter Svenson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.pietersvenson.workshop.util;
+
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * The registry of {@link Timing}s for everything the plugin runs on the server's behalf:
+ * feature event handlers, scheduled tasks and commands.
+ */
+public final class Timings {
+
+  private static final ConcurrentMap<String, Timing> timings = Maps.newConcurrentMap();
+
+  private Timings() {
+  }
+
+  /**
+   * Get the timing with the given name, creating it if it doesn't exist.
+   * Callers on hot paths should look their timing up once and keep it.
+   *
+   * @param name the name, like "task save"
+   * @return the timing
+   */
+  @Nonnull
+  public static Timing of(@Nonnull String name) {
+    return timings.computeIfAbsent(name, Timing::new);
+  }
+
+  /**
+   * Wrap a task so that each run of it is recorded as a scheduled task.
+   *
+   * @param name the name of the task
+   * @param task the task
+   * @return the timed task
+   */
+  @Nonnull
+  public static Runnable task(@Nonnull String name, @Nonnull Runnable task) {
+    Timing timing = of("task " + name);
+    return () -> {
+      long start = System.nanoTime();
+      try {
+        task.run();
+      } finally {
+        timing.record(start);
+      }
+    };
+  }
+
+  /**
+   * Get the timings which have been called, the ones with the most total time first.
+   *
+   * @return the timings
+   */
+  @Nonnull
+  public static List<Timing> getByTotal() {
+    return timings.values().stream()
+        .filter(timing -> timing.getCount() > 0)
+        .sorted(Comparator.comparingLong(Timing::getTotalNanos).reversed())
+        .collect(Collectors.toList());
+  }
+
+  public static void reset() {
+    timings.values().forEach(Timing::reset);
+  }
+
+  /**
+   * Describe a single timing on one line.
+   *
+   * @param timing the timing
+   * @return the description
+   */
+  @Nonnull
+  public static String describe(@Nonnull Timing timing) {
+    return String.format(Locale.ROOT, "%s: %d calls, %s total, %s mean, %s p95, %s p99, %s max",
+        timing.getName(),
+        timing.getCount(),
+        formatNanos(timing.getTotalNanos()),
+        formatNanos(timing.getMeanNanos()),
+        formatNanos(timing.getPercentileNanos(95)),
+        formatNanos(timing.getPercentileNanos(99)),
+        formatNanos(timing.getMaxNanos()));
+  }
+
+  /**
+   * Write a report of all the given timings, one per line.
+   *
+   * @param timings the timings
+   * @return the report
+   */
+  @Nonnull
+  public static String report(@Nonnull Collection<Timing> timings) {
+    return timings.stream()
+        .map(Timings::describe)
+        .collect(Collectors.joining(System.lineSeparator(), "", System.lineSeparator()));
+  }
+
+  @Nonnull
+  private static String formatNanos(long nanos) {
+    if (nanos < 1_000) {
+      return nanos + "ns";
+    } else if (nanos < 1_000_000) {
+      return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+    } else if (nanos < 1_000_000_000) {
+      return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+    } else {
+      return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+    }
+  }
+
+}
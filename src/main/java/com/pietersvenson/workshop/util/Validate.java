@@ -56,6 +56,10 @@ public final class Validate {
     return !s.isEmpty() && !Pattern.compile(".*[^a-zA-Z\\- ].*").matcher(s).find();
   }
 
+  public static boolean isUsername(String s) {
+    return s.length() >= 3 && s.length() <= 16 && !Pattern.compile(".*[^a-zA-Z0-9_].*").matcher(s).find();
+  }
+
   public static boolean isAlphaNumeric(String s) {
     return !s.isEmpty() && !Pattern.compile(".*[^a-zA-Z0-9].*").matcher(s).find();
   }